@@ -0,0 +1,78 @@
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Measures how responsive the kernel stays while a 100 MB file is read,
+ * first with a synchronous {@code OS.Read}, then with {@code OS.ReadAsync}.
+ * A probe process makes back to back system calls the whole time and reports
+ * the longest it had to wait for one.
+ */
+public class AsyncIOBenchmarkProcess extends UserlandProcess {
+
+    private static final int FILE_SIZE = 100 * 1024 * 1024;
+    private static final int CHUNK = 1024 * 1024;
+    /** Message type asking the probe to report and reset its statistics. */
+    private static final int REPORT = 0;
+
+    @Override
+    public void main() {
+        int fd = OS.Open("file asyncbench.bin");
+        byte[] chunk = new byte[CHUNK];
+        for (int written = 0; written < FILE_SIZE; written += CHUNK)
+            OS.Write(fd, chunk);
+
+        int probePID = OS.CreateProcess(new Probe(OS.GetPID()));
+        OS.Sleep(500);
+        probeReport(probePID);
+
+        OS.Seek(fd, 0);
+        long start = System.nanoTime();
+        int read = OS.Read(fd, FILE_SIZE).length;
+        long syncTime = System.nanoTime() - start;
+        println(String.format("sync read  %d bytes in %.1f ms, probe: %s", read, syncTime / 1e6, probeReport(probePID)));
+
+        OS.Seek(fd, 0);
+        start = System.nanoTime();
+        OS.ReadAsync(fd, FILE_SIZE);
+        read = ((byte[]) OS.WaitForIO(-1).getResult()).length;
+        long asyncTime = System.nanoTime() - start;
+        println(String.format("async read %d bytes in %.1f ms, probe: %s", read, asyncTime / 1e6, probeReport(probePID)));
+        OS.Close(fd);
+    }
+
+    /**
+     * Asks the probe for its statistics since the last report.
+     */
+    private static String probeReport(int probePID) {
+        OS.SendMessage(new KernelMessage(probePID, REPORT, new byte[0]));
+        return new String(OS.WaitForMessageFrom(probePID, -1).getData(), StandardCharsets.UTF_8);
+    }
+
+    public static class Probe extends UserlandProcess {
+        private final int benchmarkPID;
+
+        public Probe(int benchmarkPID) {
+            this.benchmarkPID = benchmarkPID;
+        }
+
+        @Override
+        public void main() {
+            long calls = 0, maxGap = 0;
+            long last = System.nanoTime();
+            while (true) {
+                OS.GetPID();
+                long now = System.nanoTime();
+                maxGap = Math.max(maxGap, now - last);
+                last = now;
+                calls++;
+                if (OS.WaitForMessage(KernelMessage.typeMask(REPORT), 0) != null) {
+                    String report = String.format("%d syscalls, longest wait %.1f ms", calls, maxGap / 1e6);
+                    OS.SendMessage(new KernelMessage(benchmarkPID, REPORT, report.getBytes(StandardCharsets.UTF_8)));
+                    calls = 0;
+                    maxGap = 0;
+                    last = System.nanoTime();
+                }
+                cooperate();
+            }
+        }
+    }
+}
@@ -0,0 +1,271 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Size-bounded, write-back cache of fixed-size file blocks shared by every
+ * open file. Blocks are evicted least recently used first, written back to
+ * the host when evicted, when their file is closed, and periodically. Reads
+ * that continue where the previous read of a file left off pull in the
+ * following blocks in the same host read.
+ * <p>
+ * The cache is used by the kernel, kernel I/O workers, and its own flush
+ * timer, so every method is synchronized.
+ */
+public class BlockCache {
+
+    /** Size of each block in bytes. */
+    public static final int BLOCK_SIZE = 4096;
+    /** Number of blocks read ahead on sequential access. */
+    private static final int READ_AHEAD = 4;
+    /** How often dirty blocks are written back, in milliseconds. */
+    private static final int FLUSH_INTERVAL = 1000;
+
+    private final int capacity;
+    /** Cached blocks in least to most recently used order. */
+    private final LinkedHashMap<String, Block> blocks;
+    private final Timer flusher = new Timer("BlockCacheFlusher", true);
+
+    // statistics
+    private long hits = 0;
+    private long misses = 0;
+    private long readAheads = 0;
+    private long writeBacks = 0;
+    private int dirtyBlocks = 0;
+
+    /**
+     * A cached block of a file.
+     */
+    private static class Block {
+        /** File the block belongs to. Only needed while the block is dirty, as
+         * blocks are flushed before their file is closed. */
+        CachedFile file;
+        final long index;
+        final byte[] data = new byte[BLOCK_SIZE];
+        /** Number of valid bytes at the start of {@code data}. */
+        int length = 0;
+        boolean dirty = false;
+
+        Block(CachedFile file, long index) {
+            this.file = file;
+            this.index = index;
+        }
+    }
+
+    /**
+     * @param capacity Maximum number of blocks to cache.
+     */
+    public BlockCache(int capacity) {
+        this.capacity = capacity;
+        blocks = new LinkedHashMap<>(capacity, 0.75f, true);
+        flusher.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                flushAll();
+            }
+        }, FLUSH_INTERVAL, FLUSH_INTERVAL);
+    }
+
+    private static String key(CachedFile file, long index) {
+        return file.getPath() + '#' + index;
+    }
+
+    /**
+     * Reads from a file through the cache.
+     * @param position Offset into the file to start reading at.
+     * @param dest Buffer to read into.
+     * @param destOffset Offset into {@code dest} to start filling at.
+     * @param length Maximum number of bytes to read.
+     * @return Number of bytes read, less than {@code length} at the end of the
+     * file.
+     */
+    public synchronized int read(CachedFile file, long position, byte[] dest, int destOffset, int length) {
+        int count = (int) Math.max(0, Math.min(length, file.getLength() - position));
+        int done = 0;
+        while (done < count) {
+            long index = (position + done) / BLOCK_SIZE;
+            int offset = (int) ((position + done) % BLOCK_SIZE);
+            boolean sequential = index == file.getLastBlockRead() + 1;
+            Block block = getBlock(file, index, sequential);
+            file.setLastBlockRead(index);
+            int n = Math.min(count - done, BLOCK_SIZE - offset);
+            System.arraycopy(block.data, offset, dest, destOffset + done, n);
+            done += n;
+        }
+        return count;
+    }
+
+    /**
+     * Writes to a file through the cache. The data reaches the host once the
+     * blocks are flushed.
+     * @param position Offset into the file to start writing at.
+     * @param src Data to write.
+     * @param srcOffset Offset into {@code src} of the first byte to write.
+     * @param length Number of bytes to write.
+     */
+    public synchronized void write(CachedFile file, long position, byte[] src, int srcOffset, int length) {
+        int done = 0;
+        while (done < length) {
+            long index = (position + done) / BLOCK_SIZE;
+            int offset = (int) ((position + done) % BLOCK_SIZE);
+            int n = Math.min(length - done, BLOCK_SIZE - offset);
+            Block block;
+            if (offset == 0 && n == BLOCK_SIZE && !blocks.containsKey(key(file, index))) {
+                // overwriting the whole block, no need to read it first
+                block = new Block(file, index);
+                insert(key(file, index), block);
+            } else
+                block = getBlock(file, index, false);
+            System.arraycopy(src, srcOffset + done, block.data, offset, n);
+            block.length = Math.max(block.length, offset + n);
+            block.file = file;
+            if (!block.dirty) {
+                block.dirty = true;
+                dirtyBlocks++;
+            }
+            done += n;
+        }
+        file.setLength(Math.max(file.getLength(), position + length));
+    }
+
+    /**
+     * Writes back every dirty block of a file.
+     */
+    public synchronized void flush(CachedFile file) {
+        for (Block block : blocks.values())
+            if (block.dirty && block.file == file)
+                writeBack(block);
+    }
+
+    /**
+     * Writes back every dirty block.
+     */
+    public synchronized void flushAll() {
+        for (Block block : blocks.values())
+            if (block.dirty)
+                writeBack(block);
+    }
+
+    /**
+     * Returns a block of a file, reading it from the host on a miss.
+     * @param readAhead Also read the following blocks on a miss.
+     */
+    private Block getBlock(CachedFile file, long index, boolean readAhead) {
+        Block block = blocks.get(key(file, index));
+        if (block != null) {
+            hits++;
+            return block;
+        }
+        misses++;
+        int count = 1;
+        if (readAhead) {
+            // read ahead only as far as the next cached block or end of file
+            long lastBlock = (file.getLength() - 1) / BLOCK_SIZE;
+            while (count <= READ_AHEAD && index + count <= lastBlock
+                    && !blocks.containsKey(key(file, index + count)))
+                count++;
+            readAheads += count - 1;
+        }
+        return load(file, index, count);
+    }
+
+    /**
+     * Reads {@code count} consecutive blocks from the host in a single
+     * scatter read straight into the new blocks.
+     * @return The first block read.
+     */
+    private Block load(CachedFile file, long index, int count) {
+        Block[] loaded = new Block[count];
+        ByteBuffer[] buffers = new ByteBuffer[count];
+        long start = index * BLOCK_SIZE;
+        for (int i = 0; i < count; i++) {
+            loaded[i] = new Block(file, index + i);
+            buffers[i] = ByteBuffer.wrap(loaded[i].data);
+            // blocks past the host's end of file may hold unflushed writes
+            // further along, those bytes read as zeros
+            long blockStart = start + (long) i * BLOCK_SIZE;
+            loaded[i].length = (int) Math.max(0, Math.min(BLOCK_SIZE, file.getLength() - blockStart));
+        }
+        try {
+            FileChannel channel = file.getChannel();
+            channel.position(start);
+            while (buffers[count - 1].hasRemaining())
+                if (channel.read(buffers) == -1)
+                    break;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (int i = 0; i < count; i++)
+            insert(key(file, index + i), loaded[i]);
+        return loaded[0];
+    }
+
+    /**
+     * Adds a block, evicting the least recently used block if the cache is
+     * full.
+     */
+    private void insert(String key, Block block) {
+        if (blocks.size() >= capacity) {
+            Iterator<Map.Entry<String, Block>> it = blocks.entrySet().iterator();
+            Block victim = it.next().getValue();
+            if (victim.dirty)
+                writeBack(victim);
+            it.remove();
+        }
+        blocks.put(key, block);
+    }
+
+    private void writeBack(Block block) {
+        try {
+            FileChannel channel = block.file.getChannel();
+            ByteBuffer buffer = ByteBuffer.wrap(block.data, 0, block.length);
+            long position = block.index * BLOCK_SIZE;
+            while (buffer.hasRemaining())
+                position += channel.write(buffer, position);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        block.dirty = false;
+        dirtyBlocks--;
+        writeBacks++;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Fraction of block lookups served from the cache.
+     */
+    public synchronized double getHitRatio() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    public synchronized long getReadAheads() {
+        return readAheads;
+    }
+
+    public synchronized long getWriteBacks() {
+        return writeBacks;
+    }
+
+    public synchronized int getDirtyBlocks() {
+        return dirtyBlocks;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("blocks=%d/%d,hits=%d,misses=%d,hitratio=%.3f,readahead=%d,dirty=%d,writebacks=%d",
+                blocks.size(), capacity, hits, misses, getHitRatio(), readAheads, dirtyBlocks, writeBacks);
+    }
+}
@@ -0,0 +1,16 @@
+/**
+ * A device whose reads and writes may have to wait on another process, such as
+ * a pipe. Rather than stalling the kernel, the kernel checks whether a call can
+ * make progress and otherwise puts the caller into a waiting state.
+ */
+public interface BlockingDevice extends Device {
+    /**
+     * Whether {@code Read} would return data (or end of stream) right now.
+     */
+    boolean canRead(int id);
+
+    /**
+     * Whether {@code Write} would accept data (or fail) right now.
+     */
+    boolean canWrite(int id);
+}
@@ -0,0 +1,64 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+/**
+ * A host file opened through {@code FakeFileSystem}. Shared by every handle
+ * open to the same path so that they all see the same cached blocks.
+ */
+public class CachedFile {
+
+    private final String path;
+    private final RandomAccessFile file;
+    /** Number of handles open to this file. */
+    private int handles = 0;
+    /** Length of the file including writes not yet flushed to the host. */
+    private long length;
+    /** Index of the last block read, used to detect sequential access. */
+    private long lastBlockRead = -2;
+
+    public CachedFile(String path, RandomAccessFile file) throws IOException {
+        this.path = path;
+        this.file = file;
+        this.length = file.length();
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public RandomAccessFile getFile() {
+        return file;
+    }
+
+    public FileChannel getChannel() {
+        return file.getChannel();
+    }
+
+    public void open() {
+        handles++;
+    }
+
+    /**
+     * @return Number of handles still open.
+     */
+    public int close() {
+        return --handles;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public void setLength(long length) {
+        this.length = length;
+    }
+
+    public long getLastBlockRead() {
+        return lastBlockRead;
+    }
+
+    public void setLastBlockRead(long block) {
+        lastBlockRead = block;
+    }
+}
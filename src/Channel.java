@@ -0,0 +1,73 @@
+import java.util.ArrayList;
+
+/**
+ * A named publish/subscribe channel managed by the kernel. Every message
+ * published to a channel is delivered to the mailbox of each subscribed
+ * process, all sharing a single copy of the payload.
+ */
+public class Channel {
+
+    private final String name;
+    private final ArrayList<PCB> subscribers = new ArrayList<>();
+    /** Number of messages published to this channel. */
+    private int publishCount = 0;
+    /** Number of deliveries dropped because a subscriber's mailbox was
+     * full. */
+    private int dropCount = 0;
+
+    public Channel(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Adds a process to this channel.
+     * @return {@code false} if the process was already subscribed.
+     */
+    public boolean subscribe(PCB pcb) {
+        if (subscribers.contains(pcb))
+            return false;
+        subscribers.add(pcb);
+        return true;
+    }
+
+    /**
+     * Removes a process from this channel.
+     * @return {@code false} if the process was not subscribed.
+     */
+    public boolean unsubscribe(PCB pcb) {
+        return subscribers.remove(pcb);
+    }
+
+    public boolean hasSubscribers() {
+        return !subscribers.isEmpty();
+    }
+
+    public ArrayList<PCB> getSubscribers() {
+        return subscribers;
+    }
+
+    public int getPublishCount() {
+        return publishCount;
+    }
+
+    public int getDropCount() {
+        return dropCount;
+    }
+
+    public void recordPublish() {
+        publishCount++;
+    }
+
+    public void recordDrop() {
+        dropCount++;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s subscribers=%d,published=%d,dropped=%d", name, subscribers.size(), publishCount, dropCount);
+    }
+}
@@ -0,0 +1,27 @@
+/**
+ * Snapshot of a publish/subscribe channel's statistics, see
+ * {@code OS.GetChannelStats}. Counts are totals since the channel was
+ * created.
+ */
+public class ChannelStats {
+
+    public final String name;
+    /** Number of processes currently subscribed. */
+    public final int subscribers;
+    /** Messages published to the channel. */
+    public final int publishCount;
+    /** Deliveries dropped because a subscriber's mailbox was full. */
+    public final int dropCount;
+
+    public ChannelStats(Channel channel) {
+        name = channel.getName();
+        subscribers = channel.getSubscribers().size();
+        publishCount = channel.getPublishCount();
+        dropCount = channel.getDropCount();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s subscribers=%d,published=%d,dropped=%d", name, subscribers, publishCount, dropCount);
+    }
+}
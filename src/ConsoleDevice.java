@@ -0,0 +1,228 @@
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Device for process output. Each handle collects what is written to it into
+ * lines, and complete lines are handed to a single drain thread that writes
+ * them out in batches, so processes never wait on the host's output stream.
+ * <p>
+ * {@code "console"} writes to stdout and {@code "console <path>"} appends to a
+ * log file. By default a writer waits while more than {@code CAPACITY} bytes
+ * are waiting to be drained. Opening with {@code "console drop"} (or
+ * {@code "console drop <path>"}) discards writes that don't fit instead, and
+ * the number discarded is written to stdout once the drain catches up.
+ */
+public class ConsoleDevice implements BlockingDevice {
+
+    /** Number of bytes accepted but not yet written out before writers wait
+     * or writes are dropped. */
+    private static final int CAPACITY = 64 * 1024;
+    /** Lines longer than this are handed to the drain in pieces. */
+    private static final int MAX_LINE = 4096;
+
+    private final HandleTable<Handle> handles = new HandleTable<>();
+    /** Log files by path, shared by every handle appending to the same file.
+     * Kept open for as long as the device exists. */
+    private final HashMap<String, OutputStream> logs = new HashMap<>();
+
+    /** Lines waiting to be written out. Guarded by {@code this}, as is
+     * everything below. */
+    private final ArrayDeque<Chunk> queue = new ArrayDeque<>();
+    /** Bytes accepted by {@code Write} and not yet written out, including
+     * those still in handles' line buffers. */
+    private int pendingBytes = 0;
+    private long droppedWrites = 0;
+    /** Dropped writes not yet reported in the output. */
+    private long unreportedDrops = 0;
+
+    /**
+     * An open handle, buffering the line currently being written.
+     */
+    private static class Handle {
+        final OutputStream sink;
+        final boolean drop;
+        final byte[] line = new byte[MAX_LINE];
+        int length = 0;
+
+        Handle(OutputStream sink, boolean drop) {
+            this.sink = sink;
+            this.drop = drop;
+        }
+    }
+
+    /**
+     * Output waiting to be written to a sink.
+     */
+    private record Chunk(OutputStream sink, byte[] data) {}
+
+    public ConsoleDevice() {
+        Thread drain = new Thread(this::drain, "ConsoleDrain");
+        drain.setDaemon(true);
+        drain.start();
+    }
+
+    @Override
+    public int Open(String s) {
+        boolean drop = false;
+        if (s != null && (s.equals("drop") || s.startsWith("drop "))) {
+            drop = true;
+            s = s.length() > 5 ? s.substring(5) : null;
+        }
+        OutputStream sink = System.out;
+        if (s != null && !s.isEmpty()) {
+            sink = logs.get(s);
+            if (sink == null) {
+                try {
+                    sink = new BufferedOutputStream(new FileOutputStream(s, true));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return -1;
+                }
+                logs.put(s, sink);
+            }
+        }
+        return handles.add(new Handle(sink, drop));
+    }
+
+    /**
+     * Closes a handle, handing any unfinished line to the drain.
+     */
+    @Override
+    public void Close(int id) {
+        Handle handle = handles.remove(id);
+        if (handle != null && handle.length > 0)
+            submit(handle);
+    }
+
+    /**
+     * The console can't be read from, always returns an empty array.
+     */
+    @Override
+    public byte[] Read(int id, int size) {
+        return new byte[0];
+    }
+
+    /**
+     * The console is not seekable, does nothing.
+     */
+    @Override
+    public void Seek(int id, int to) {}
+
+    /**
+     * Accepts as much of {@code data} as there is room for. Handles opened
+     * with {@code "drop"} accept all of it or drop all of it.
+     * @return Number of bytes accepted, or dropped.
+     */
+    @Override
+    public int Write(int id, byte[] data) {
+        Handle handle = handles.get(id);
+        int accepted;
+        synchronized (this) {
+            int room = CAPACITY - pendingBytes;
+            if (handle.drop && data.length > room) {
+                droppedWrites++;
+                unreportedDrops++;
+                return data.length;
+            }
+            accepted = Math.min(data.length, room);
+            pendingBytes += accepted;
+        }
+        for (int i = 0; i < accepted; i++) {
+            handle.line[handle.length++] = data[i];
+            if (data[i] == '\n' || handle.length == MAX_LINE)
+                submit(handle);
+        }
+        return accepted;
+    }
+
+    @Override
+    public boolean canRead(int id) {
+        return true;
+    }
+
+    /**
+     * Whether there is room for more output. Always {@code true} for handles
+     * that drop writes instead of waiting.
+     */
+    @Override
+    public synchronized boolean canWrite(int id) {
+        return handles.get(id).drop || pendingBytes < CAPACITY;
+    }
+
+    /**
+     * Hands a handle's buffered line to the drain.
+     */
+    private void submit(Handle handle) {
+        byte[] data = Arrays.copyOf(handle.line, handle.length);
+        handle.length = 0;
+        synchronized (this) {
+            queue.add(new Chunk(handle.sink, data));
+            notify();
+        }
+    }
+
+    /**
+     * Body of the drain thread. Takes everything queued at once, writes it out,
+     * and flushes each sink written to.
+     */
+    private void drain() {
+        ArrayDeque<Chunk> batch = new ArrayDeque<>();
+        while (true) {
+            long drops;
+            synchronized (this) {
+                while (queue.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                batch.addAll(queue);
+                queue.clear();
+                drops = unreportedDrops;
+                unreportedDrops = 0;
+            }
+            int written = 0;
+            HashSet<OutputStream> touched = new HashSet<>();
+            for (Chunk chunk : batch) {
+                try {
+                    chunk.sink().write(chunk.data());
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                written += chunk.data().length;
+                touched.add(chunk.sink());
+            }
+            if (drops > 0) {
+                byte[] notice = String.format("[console: %d writes dropped]%n", drops).getBytes(StandardCharsets.UTF_8);
+                System.out.write(notice, 0, notice.length);
+                touched.add(System.out);
+            }
+            for (OutputStream sink : touched) {
+                try {
+                    sink.flush();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            batch.clear();
+            synchronized (this) {
+                pendingBytes -= written;
+            }
+        }
+    }
+
+    /**
+     * Total number of writes dropped because the drain had fallen behind.
+     */
+    public synchronized long getDroppedWrites() {
+        return droppedWrites;
+    }
+}
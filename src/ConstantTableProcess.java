@@ -0,0 +1,63 @@
+import java.util.Random;
+
+/**
+ * Worker of {@code PageMergingBenchmarkProcess}. Fills a table computed the
+ * same way by every instance, and some pages of random data of its own, and
+ * leaves a few pages it allocates untouched. Holds on to them while the
+ * benchmark merges memory, checks they read back right, then changes part
+ * of the table and checks again.
+ */
+public class ConstantTableProcess extends UserlandProcess {
+
+    public static final int TABLE_PAGES = 16;
+    public static final int RANDOM_PAGES = 8;
+    public static final int UNTOUCHED_PAGES = 8;
+    /** Pages of the table changed after merging. */
+    public static final int CHANGED_PAGES = 4;
+    public static final int HOLD_MILLIS = 5000;
+
+    @Override
+    public void main() {
+        int size = (TABLE_PAGES + RANDOM_PAGES + UNTOUCHED_PAGES) * Hardware.PAGE_SIZE;
+        int p = OS.AllocateMemory(size, false);
+        if (p == -1)
+            throw new RuntimeException("Memory allocation failed");
+        int table = p, random = p + TABLE_PAGES * Hardware.PAGE_SIZE;
+        int untouched = random + RANDOM_PAGES * Hardware.PAGE_SIZE;
+        for (int i = 0; i < TABLE_PAGES * Hardware.PAGE_SIZE; i++)
+            Hardware.Write(table + i, tableAt(i));
+        byte[] data = new byte[RANDOM_PAGES * Hardware.PAGE_SIZE];
+        new Random().nextBytes(data);
+        for (int i = 0; i < data.length; i++)
+            Hardware.Write(random + i, data[i]);
+
+        OS.Sleep(HOLD_MILLIS);
+        check(table, random, untouched, data, 0);
+        int changed = CHANGED_PAGES * Hardware.PAGE_SIZE;
+        for (int i = 0; i < changed; i++)
+            Hardware.Write(table + i, (byte) ~tableAt(i));
+        check(table, random, untouched, data, changed);
+
+        OS.Sleep(HOLD_MILLIS);
+        OS.FreeMemory(p, size);
+    }
+
+    private static void check(int table, int random, int untouched, byte[] data, int changed) {
+        for (int i = 0; i < TABLE_PAGES * Hardware.PAGE_SIZE; i++)
+            if (Hardware.Read(table + i) != (i < changed ? (byte) ~tableAt(i) : tableAt(i)))
+                throw new RuntimeException("Table doesn't match what was written");
+        for (int i = 0; i < data.length; i++)
+            if (Hardware.Read(random + i) != data[i])
+                throw new RuntimeException("Memory doesn't match the generated data");
+        for (int i = 0; i < UNTOUCHED_PAGES * Hardware.PAGE_SIZE; i++)
+            if (Hardware.Read(untouched + i) != 0)
+                throw new RuntimeException("Untouched memory isn't zero");
+    }
+
+    /**
+     * The byte at offset {@code i} of the table, a quarter-wave sine table.
+     */
+    private static byte tableAt(int i) {
+        return (byte) Math.round(127 * Math.sin(i * Math.PI / 2 / (TABLE_PAGES * Hardware.PAGE_SIZE)));
+    }
+}
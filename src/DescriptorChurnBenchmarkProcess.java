@@ -0,0 +1,43 @@
+import java.util.Random;
+
+/**
+ * Opens 10,000 descriptors at once, then repeatedly closes a random one and
+ * opens another in its place, and reports how long opens and closes take.
+ */
+public class DescriptorChurnBenchmarkProcess extends UserlandProcess {
+
+    private static final int DESCRIPTORS = 10_000;
+    private static final int CHURN = 100_000;
+
+    @Override
+    public void main() {
+        Random random = new Random();
+        int[] fds = new int[DESCRIPTORS];
+
+        long start = System.nanoTime();
+        for (int i = 0; i < DESCRIPTORS; i++) {
+            fds[i] = OS.Open("random");
+            if (fds[i] == -1)
+                throw new RuntimeException("Open failed after " + i + " descriptors");
+        }
+        long openTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < CHURN; i++) {
+            int victim = random.nextInt(DESCRIPTORS);
+            OS.Close(fds[victim]);
+            fds[victim] = OS.Open("random");
+            if (fds[victim] == -1)
+                throw new RuntimeException("Reopen failed");
+        }
+        long churnTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int fd : fds)
+            OS.Close(fd);
+        long closeTime = System.nanoTime() - start;
+
+        println(String.format("opened %d descriptors in %.1f ms (%.2f us each), %d close+open pairs in %.1f ms (%.2f us each), closed all in %.1f ms",
+                DESCRIPTORS, openTime / 1e6, openTime / 1e3 / DESCRIPTORS, CHURN, churnTime / 1e6, churnTime / 1e3 / CHURN, closeTime / 1e6));
+    }
+}
@@ -1,7 +1,82 @@
+import java.util.Arrays;
+
 public interface Device {
     int Open(String s);
     void Close(int id);
     byte[] Read(int id, int size);
     void Seek(int id, int to);
     int Write(int id, byte[] data);
+
+    /**
+     * Reads into a caller supplied buffer rather than allocating a new one.
+     * @return Number of bytes read.
+     */
+    default int ReadInto(int id, byte[] buffer, int offset, int length) {
+        byte[] data = Read(id, length);
+        System.arraycopy(data, 0, buffer, offset, data.length);
+        return data.length;
+    }
+
+    /**
+     * Writes part of {@code buffer}, the counterpart of {@code ReadInto}.
+     * @return Number of bytes written.
+     */
+    default int WriteFrom(int id, byte[] buffer, int offset, int length) {
+        return Write(id, Arrays.copyOfRange(buffer, offset, offset + length));
+    }
+
+    /**
+     * Reads starting at {@code position} without moving the handle's
+     * position. Devices without positional reads seek to {@code position}
+     * first instead.
+     * @return Number of bytes read.
+     */
+    default int ReadAt(int id, int position, byte[] buffer, int offset, int length) {
+        Seek(id, position);
+        return ReadInto(id, buffer, offset, length);
+    }
+
+    /**
+     * Writes starting at {@code position} without moving the handle's
+     * position. Devices without positional writes seek to {@code position}
+     * first instead.
+     * @return Number of bytes written.
+     */
+    default int WriteAt(int id, int position, byte[] data) {
+        Seek(id, position);
+        return Write(id, data);
+    }
+
+    /**
+     * Scatter read, fills each buffer in turn, stopping early on a short read.
+     * @return Total number of bytes read.
+     */
+    default int ReadV(int id, byte[][] buffers) {
+        int total = 0;
+        for (byte[] buffer : buffers) {
+            int n = ReadInto(id, buffer, 0, buffer.length);
+            total += n;
+            if (n < buffer.length)
+                break;
+        }
+        return total;
+    }
+
+    /**
+     * Gather write, writes each buffer in turn, stopping early on a short
+     * write.
+     * @return Total number of bytes written, -1 if nothing could be written.
+     */
+    default int WriteV(int id, byte[][] buffers) {
+        int total = 0;
+        for (byte[] buffer : buffers) {
+            int n = Write(id, buffer);
+            if (n < 0)
+                return total == 0 ? -1 : total;
+            total += n;
+            if (n < buffer.length)
+                break;
+        }
+        return total;
+    }
 }
@@ -0,0 +1,408 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+
+/**
+ * A whole filesystem stored in one pre-allocated host file, accessed through a
+ * memory mapping of it. The image is laid out in blocks as
+ * <pre>
+ *   superblock | inode table | directory | data blocks
+ * </pre>
+ * Each inode holds a file's name, size, and up to {@code MAX_EXTENTS} extents,
+ * runs of contiguous data blocks. Files grow by extending their last extent in
+ * place where possible, and a file that runs out of extents is moved into a
+ * single larger one. The directory is an open addressing hash table of
+ * inode numbers keyed by the hash of their file's name.
+ * <p>
+ * Which data blocks are free is not stored in the image but rebuilt from the
+ * inodes when it is opened. The image is shared by the kernel and kernel I/O
+ * workers, so every method that touches metadata is synchronized.
+ */
+public class DiskImage {
+
+    public static final int BLOCK_SIZE = 4096;
+    /** Size of the image file, in blocks. */
+    private static final int BLOCKS = 16 * 1024;
+    private static final int INODES = 4096;
+    private static final int INODE_SIZE = 128;
+    /** Number of directory slots, twice the number of inodes to keep probe
+     * sequences short. */
+    private static final int DIRECTORY_SLOTS = 2 * INODES;
+    public static final int MAX_EXTENTS = 6;
+    public static final int MAX_NAME_LENGTH = 64;
+    private static final int MAGIC = 0x46534931;
+
+    // superblock layout
+    private static final int SUPER_MAGIC = 0;
+    private static final int SUPER_BLOCKS = 4;
+    private static final int SUPER_INODES = 8;
+
+    // inode layout
+    private static final int INODE_USED = 0;
+    private static final int INODE_SIZE_BYTES = 4;
+    private static final int INODE_EXTENT_COUNT = 8;
+    /** Extents as pairs of (first block, number of blocks). */
+    private static final int INODE_EXTENTS = 12;
+    private static final int INODE_NAME_HASH = 60;
+    private static final int INODE_NAME_LENGTH = 62;
+    private static final int INODE_NAME = 64;
+
+    private static final int INODE_TABLE = BLOCK_SIZE;
+    private static final int DIRECTORY = INODE_TABLE + INODES * INODE_SIZE;
+    /** First data block. */
+    private static final int DATA_START = (DIRECTORY + DIRECTORY_SLOTS * 4 + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+    private final MappedByteBuffer image;
+    /** Blocks in use, including the metadata blocks. */
+    private final BitSet usedBlocks = new BitSet(BLOCKS);
+    /** Block the next search for free blocks starts at. */
+    private int nextFreeHint = DATA_START;
+    private int usedInodes = 0;
+    /** Inode the next search for a free inode starts at. */
+    private int nextFreeInode = 0;
+
+    /**
+     * Opens the image at {@code path}, creating and formatting it if it does
+     * not exist or does not hold a filesystem.
+     */
+    public DiskImage(String path) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+            boolean format = file.length() != (long) BLOCKS * BLOCK_SIZE;
+            if (format)
+                file.setLength((long) BLOCKS * BLOCK_SIZE);
+            image = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, (long) BLOCKS * BLOCK_SIZE);
+            if (format || image.getInt(SUPER_MAGIC) != MAGIC)
+                format();
+        }
+        mount();
+    }
+
+    /**
+     * Writes an empty filesystem to the image.
+     */
+    private void format() {
+        byte[] zeros = new byte[BLOCK_SIZE];
+        for (int block = 0; block < DATA_START; block++)
+            image.put(block * BLOCK_SIZE, zeros);
+        image.putInt(SUPER_BLOCKS, BLOCKS);
+        image.putInt(SUPER_INODES, INODES);
+        image.putInt(SUPER_MAGIC, MAGIC);
+    }
+
+    /**
+     * Rebuilds the free block map from the inode table.
+     */
+    private void mount() {
+        usedBlocks.set(0, DATA_START);
+        for (int inode = 0; inode < INODES; inode++) {
+            int base = inodeOffset(inode);
+            if (image.getInt(base + INODE_USED) == 0)
+                continue;
+            usedInodes++;
+            int extents = image.getInt(base + INODE_EXTENT_COUNT);
+            for (int e = 0; e < extents; e++)
+                usedBlocks.set(extentStart(inode, e), extentStart(inode, e) + extentLength(inode, e));
+        }
+    }
+
+    private static int inodeOffset(int inode) {
+        return INODE_TABLE + inode * INODE_SIZE;
+    }
+
+    private int extentStart(int inode, int extent) {
+        return image.getInt(inodeOffset(inode) + INODE_EXTENTS + extent * 8);
+    }
+
+    private int extentLength(int inode, int extent) {
+        return image.getInt(inodeOffset(inode) + INODE_EXTENTS + extent * 8 + 4);
+    }
+
+    private static int hash(byte[] name) {
+        int h = 0;
+        for (byte b : name)
+            h = 31 * h + b;
+        // spread the high bits into the low bits used to pick a slot
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Finds the inode of a file, optionally creating it.
+     * @param name Name of the file, at most {@code MAX_NAME_LENGTH} bytes once
+     *             encoded as UTF-8.
+     * @param create Whether to create the file if it does not exist.
+     * @return The file's inode number. -1 if it does not exist and was not
+     * created, or the name or image is unusable.
+     */
+    public synchronized int lookup(String name, boolean create) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length == 0 || bytes.length > MAX_NAME_LENGTH)
+            return -1;
+        int hash = hash(bytes);
+        int slot = hash & (DIRECTORY_SLOTS - 1);
+        while (true) {
+            int entry = image.getInt(DIRECTORY + slot * 4);
+            if (entry == 0)
+                break;
+            int inode = entry - 1;
+            if (nameEquals(inode, hash, bytes))
+                return inode;
+            slot = (slot + 1) & (DIRECTORY_SLOTS - 1);
+        }
+        if (!create || usedInodes == INODES)
+            return -1;
+        // slot is now the empty slot ending the probe sequence
+        int inode = nextFreeInode;
+        while (image.getInt(inodeOffset(inode) + INODE_USED) != 0)
+            inode = (inode + 1) % INODES;
+        nextFreeInode = (inode + 1) % INODES;
+        int base = inodeOffset(inode);
+        image.putInt(base + INODE_SIZE_BYTES, 0);
+        image.putInt(base + INODE_EXTENT_COUNT, 0);
+        image.putShort(base + INODE_NAME_HASH, (short) hash);
+        image.putShort(base + INODE_NAME_LENGTH, (short) bytes.length);
+        image.put(base + INODE_NAME, bytes);
+        image.putInt(base + INODE_USED, 1);
+        image.putInt(DIRECTORY + slot * 4, inode + 1);
+        usedInodes++;
+        return inode;
+    }
+
+    private boolean nameEquals(int inode, int hash, byte[] name) {
+        int base = inodeOffset(inode);
+        if (image.getShort(base + INODE_NAME_HASH) != (short) hash)
+            return false;
+        if (image.getShort(base + INODE_NAME_LENGTH) != name.length)
+            return false;
+        for (int i = 0; i < name.length; i++)
+            if (image.get(base + INODE_NAME + i) != name[i])
+                return false;
+        return true;
+    }
+
+    public synchronized int size(int inode) {
+        return image.getInt(inodeOffset(inode) + INODE_SIZE_BYTES);
+    }
+
+    /**
+     * Reads from a file.
+     * @return Number of bytes read, less than {@code length} at the end of the
+     * file.
+     */
+    public synchronized int read(int inode, int position, byte[] buffer, int offset, int length) {
+        int size = size(inode);
+        if (position >= size)
+            return 0;
+        length = Math.min(length, size - position);
+        int done = 0;
+        while (done < length) {
+            int address = address(inode, position + done);
+            int n = Math.min(length - done, runRemaining(inode, position + done));
+            image.get(address, buffer, offset + done, n);
+            done += n;
+        }
+        return length;
+    }
+
+    /**
+     * Writes to a file, growing it as needed. Writing past the end of the file
+     * leaves a gap of zeros.
+     * @return Number of bytes written, less than {@code length} if the image
+     * is full or the file has run out of extents.
+     */
+    public synchronized int write(int inode, int position, byte[] buffer, int offset, int length) {
+        int size = size(inode);
+        int end = position + length;
+        if (end > capacity(inode))
+            end = Math.min(end, grow(inode, end));
+        if (position > size)
+            zero(inode, size, Math.min(position, end));
+        if (end <= position)
+            return 0;
+        int done = 0;
+        while (position + done < end) {
+            int address = address(inode, position + done);
+            int n = Math.min(end - position - done, runRemaining(inode, position + done));
+            image.put(address, buffer, offset + done, n);
+            done += n;
+        }
+        if (end > size)
+            image.putInt(inodeOffset(inode) + INODE_SIZE_BYTES, end);
+        return done;
+    }
+
+    private void zero(int inode, int from, int to) {
+        byte[] zeros = new byte[Math.min(to - from, BLOCK_SIZE)];
+        while (from < to) {
+            int n = Math.min(Math.min(to - from, zeros.length), runRemaining(inode, from));
+            image.put(address(inode, from), zeros, 0, n);
+            from += n;
+        }
+    }
+
+    /**
+     * Number of bytes the file's extents can hold.
+     */
+    private int capacity(int inode) {
+        int blocks = 0;
+        int extents = image.getInt(inodeOffset(inode) + INODE_EXTENT_COUNT);
+        for (int e = 0; e < extents; e++)
+            blocks += extentLength(inode, e);
+        return blocks * BLOCK_SIZE;
+    }
+
+    /**
+     * Address in the image of a position in a file within its capacity.
+     */
+    private int address(int inode, int position) {
+        int block = position / BLOCK_SIZE;
+        for (int e = 0; ; e++) {
+            int length = extentLength(inode, e);
+            if (block < length)
+                return (extentStart(inode, e) + block) * BLOCK_SIZE + position % BLOCK_SIZE;
+            block -= length;
+        }
+    }
+
+    /**
+     * Number of bytes from a position in a file to the end of the extent it
+     * lies in, which can be accessed in one go.
+     */
+    private int runRemaining(int inode, int position) {
+        int block = position / BLOCK_SIZE;
+        for (int e = 0; ; e++) {
+            int length = extentLength(inode, e);
+            if (block < length)
+                return (length - block) * BLOCK_SIZE - position % BLOCK_SIZE;
+            block -= length;
+        }
+    }
+
+    /**
+     * Adds blocks to a file until it can hold {@code bytes} bytes. The last
+     * extent is extended in place if the blocks after it are free. Otherwise a
+     * new extent at least as large as the file already is gets allocated, so
+     * that a growing file needs few extents.
+     * If the file runs out of extents it is relocated instead.
+     * @return The file's new capacity, less than {@code bytes} if it could not
+     * grow that far.
+     */
+    private int grow(int inode, int bytes) {
+        int base = inodeOffset(inode);
+        int capacity = capacity(inode) / BLOCK_SIZE;
+        int needed = (bytes + BLOCK_SIZE - 1) / BLOCK_SIZE - capacity;
+        int extents = image.getInt(base + INODE_EXTENT_COUNT);
+        if (extents > 0) {
+            int last = extents - 1;
+            int end = extentStart(inode, last) + extentLength(inode, last);
+            int nextUsed = usedBlocks.nextSetBit(end);
+            int free = (nextUsed == -1 ? BLOCKS : nextUsed) - end;
+            int taken = Math.min(free, needed);
+            if (taken > 0) {
+                usedBlocks.set(end, end + taken);
+                image.putInt(base + INODE_EXTENTS + last * 8 + 4, extentLength(inode, last) + taken);
+                needed -= taken;
+                capacity += taken;
+            }
+        }
+        while (needed > 0 && extents < MAX_EXTENTS) {
+            int[] run = findFree(Math.max(needed, capacity));
+            if (run == null)
+                break;
+            usedBlocks.set(run[0], run[0] + run[1]);
+            image.putInt(base + INODE_EXTENTS + extents * 8, run[0]);
+            image.putInt(base + INODE_EXTENTS + extents * 8 + 4, run[1]);
+            extents++;
+            image.putInt(base + INODE_EXTENT_COUNT, extents);
+            needed -= run[1];
+            capacity += run[1];
+        }
+        if (needed > 0 && extents == MAX_EXTENTS && relocate(inode, 2 * (capacity + needed)))
+            capacity = capacity(inode) / BLOCK_SIZE;
+        return capacity * BLOCK_SIZE;
+    }
+
+    /**
+     * Moves a file that has run out of extents into a single new extent,
+     * freeing its old ones.
+     * @param blocks Size of the new extent.
+     * @return {@code false} if there is no run of free blocks large enough.
+     */
+    private boolean relocate(int inode, int blocks) {
+        int[] run = findFree(blocks);
+        if (run == null || run[1] < blocks)
+            return false;
+        usedBlocks.set(run[0], run[0] + run[1]);
+        int base = inodeOffset(inode);
+        int extents = image.getInt(base + INODE_EXTENT_COUNT);
+        int to = run[0];
+        byte[] buffer = new byte[BLOCK_SIZE];
+        for (int e = 0; e < extents; e++) {
+            int start = extentStart(inode, e);
+            int length = extentLength(inode, e);
+            for (int block = start; block < start + length; block++, to++) {
+                image.get(block * BLOCK_SIZE, buffer);
+                image.put(to * BLOCK_SIZE, buffer);
+            }
+            usedBlocks.clear(start, start + length);
+        }
+        image.putInt(base + INODE_EXTENTS, run[0]);
+        image.putInt(base + INODE_EXTENTS + 4, run[1]);
+        image.putInt(base + INODE_EXTENT_COUNT, 1);
+        return true;
+    }
+
+    /**
+     * Finds the first run of {@code blocks} free blocks, searching from where
+     * the last search stopped. Returns the largest run found if none are long
+     * enough.
+     * @return The run's first block and length. {@code null} if the image is
+     * full.
+     */
+    private int[] findFree(int blocks) {
+        int bestStart = -1, bestLength = 0;
+        int start = nextFreeHint;
+        for (int pass = 0; pass < 2; pass++) {
+            int from = usedBlocks.nextClearBit(start);
+            while (from < BLOCKS) {
+                int to = usedBlocks.nextSetBit(from);
+                if (to == -1)
+                    to = BLOCKS;
+                if (to - from >= blocks) {
+                    nextFreeHint = from + blocks;
+                    return new int[] { from, blocks };
+                }
+                if (to - from > bestLength) {
+                    bestStart = from;
+                    bestLength = to - from;
+                }
+                from = usedBlocks.nextClearBit(to);
+            }
+            start = DATA_START;
+        }
+        if (bestStart == -1)
+            return null;
+        nextFreeHint = bestStart + bestLength;
+        return new int[] { bestStart, bestLength };
+    }
+
+    public synchronized int getUsedInodes() {
+        return usedInodes;
+    }
+
+    /**
+     * Number of data blocks in use.
+     */
+    public synchronized int getUsedBlocks() {
+        return usedBlocks.cardinality() - DATA_START;
+    }
+
+    /**
+     * Writes changes to the image back to the host file.
+     */
+    public synchronized void force() {
+        image.force();
+    }
+}
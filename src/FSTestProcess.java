@@ -12,7 +12,7 @@ public class FSTestProcess extends UserlandProcess {
 
         byte[] contents = new byte[1024];
         OS.Read(fd, contents.length);
-        System.out.println(contents);
+        println(String.valueOf(contents));
         OS.Close(fd);
     }
 }
@@ -1,65 +1,122 @@
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.HashMap;
 
 public class FakeFileSystem implements Device {
 
-    private final RandomAccessFile[] files = new RandomAccessFile[10];
+    /** Number of blocks held by the block cache. */
+    private static final int CACHE_BLOCKS = 256;
+    /** Block cache shared by every file. */
+    private static final BlockCache cache = new BlockCache(CACHE_BLOCKS);
+    /** Open files by absolute path, shared by all handles to the same file. */
+    private static final HashMap<String, CachedFile> openFiles = new HashMap<>();
+
+    private final HandleTable<Handle> handles = new HandleTable<>();
+
+    /**
+     * An open handle to a file.
+     */
+    private static class Handle {
+        final CachedFile file;
+        /** Offset into the file the handle reads and writes at. */
+        long position = 0;
+
+        Handle(CachedFile file) {
+            this.file = file;
+        }
+    }
 
     @Override
     public int Open(String s) {
         if (s == null || s.isEmpty())
             throw new RuntimeException("Invalid file name");
-        for (int i = 0; i < files.length; i++)
-            if (files[i] == null) {
-                try {
-                    files[i] = new RandomAccessFile(s, "rw");
-                } catch (FileNotFoundException e) {
-                    throw new RuntimeException("File not found");
-                }
-                return i;
+        String path = new File(s).getAbsolutePath();
+        CachedFile file = openFiles.get(path);
+        if (file == null) {
+            try {
+                file = new CachedFile(path, new RandomAccessFile(s, "rw"));
+            } catch (FileNotFoundException e) {
+                throw new RuntimeException("File not found");
+            } catch (IOException e) {
+                e.printStackTrace();
+                return -1;
             }
-        return -1;
+            openFiles.put(path, file);
+        }
+        file.open();
+        return handles.add(new Handle(file));
     }
 
+    /**
+     * Closes a handle, writing back its file's cached changes.
+     */
     @Override
     public void Close(int id) {
-        try {
-            files[id].close();
-        } catch (IOException e) {
-            e.printStackTrace();
+        CachedFile file = handles.remove(id).file;
+        cache.flush(file);
+        if (file.close() == 0) {
+            openFiles.remove(file.getPath());
+            try {
+                file.getFile().close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         }
-        files[id] = null;
     }
 
     @Override
     public byte[] Read(int id, int size) {
         byte[] bytes = new byte[size];
-        try {
-            files[id].read(bytes);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        ReadInto(id, bytes, 0, size);
         return bytes;
     }
 
+    @Override
+    public int ReadInto(int id, byte[] buffer, int offset, int length) {
+        Handle handle = handles.get(id);
+        int read = cache.read(handle.file, handle.position, buffer, offset, length);
+        handle.position += read;
+        return read;
+    }
+
+    @Override
+    public int ReadAt(int id, int position, byte[] buffer, int offset, int length) {
+        return cache.read(handles.get(id).file, position, buffer, offset, length);
+    }
+
     @Override
     public void Seek(int id, int to) {
-        try {
-            files[id].seek(to);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        handles.get(id).position = to;
     }
 
     @Override
     public int Write(int id, byte[] data) {
-        try {
-            files[id].write(data);
-        } catch (IOException e) {
-            e.printStackTrace();
-            return -1;
-        }
+        Handle handle = handles.get(id);
+        cache.write(handle.file, handle.position, data, 0, data.length);
+        handle.position += data.length;
+        return data.length;
+    }
+
+    @Override
+    public int WriteFrom(int id, byte[] buffer, int offset, int length) {
+        Handle handle = handles.get(id);
+        cache.write(handle.file, handle.position, buffer, offset, length);
+        handle.position += length;
+        return length;
+    }
+
+    @Override
+    public int WriteAt(int id, int position, byte[] data) {
+        cache.write(handles.get(id).file, position, data, 0, data.length);
         return data.length;
     }
+
+    /**
+     * The block cache shared by every file, e.g. for its statistics.
+     */
+    public static BlockCache getCache() {
+        return cache;
+    }
 }
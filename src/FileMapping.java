@@ -0,0 +1,40 @@
+/**
+ * A range of a file mapped into a process' memory by {@code OS.MapFile}. The
+ * page table entries of its pages refer to it by its index in the process.
+ */
+public class FileMapping {
+
+    /** Device (VFS id) of the file. */
+    public final int file;
+    /** Virtual page address the mapping starts at. */
+    public final int firstPage;
+    /** Offset into the file the mapping starts at. */
+    public final int offset;
+    /** Number of bytes mapped. */
+    public final int length;
+    /** Number of the mapping's pages that are still mapped. */
+    public int pages;
+
+    public FileMapping(int file, int firstPage, int offset, int length) {
+        this.file = file;
+        this.firstPage = firstPage;
+        this.offset = offset;
+        this.length = length;
+        pages = (length + Hardware.PAGE_SIZE - 1) / Hardware.PAGE_SIZE;
+    }
+
+    /**
+     * Offset into the file that {@code virtualPage} maps.
+     */
+    public int fileOffset(int virtualPage) {
+        return offset + (virtualPage - firstPage) * Hardware.PAGE_SIZE;
+    }
+
+    /**
+     * Number of bytes at the start of {@code virtualPage} backed by the file.
+     * The rest of the page is zero and never written back.
+     */
+    public int fileBytes(int virtualPage) {
+        return Math.min(Hardware.PAGE_SIZE, length - (virtualPage - firstPage) * Hardware.PAGE_SIZE);
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * Compares {@code ImageFileSystem} with {@code FakeFileSystem} on many small
+ * files: creating and writing each file, then opening and reading each one
+ * back.
+ */
+public class FileSystemBenchmarkProcess extends UserlandProcess {
+
+    private static final int FILES = 1000;
+    private static final int FILE_SIZE = 2048;
+
+    @Override
+    public void main() {
+        benchmark("file");
+        benchmark("disk");
+    }
+
+    private void benchmark(String device) {
+        byte[] data = new byte[FILE_SIZE];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) i;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < FILES; i++) {
+            int fd = OS.Open(device + " fsbench" + i + ".bin");
+            OS.Write(fd, data);
+            OS.Close(fd);
+        }
+        long createTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        long read = 0;
+        for (int i = 0; i < FILES; i++) {
+            int fd = OS.Open(device + " fsbench" + i + ".bin");
+            byte[] bytes = OS.Read(fd, FILE_SIZE);
+            if (bytes[FILE_SIZE - 1] != data[FILE_SIZE - 1])
+                throw new RuntimeException("File doesn't match what was written");
+            read += bytes.length;
+            OS.Close(fd);
+        }
+        long readTime = System.nanoTime() - start;
+
+        println(String.format("%s: create+write %d files in %.1f ms (%.0f files/s), open+read in %.1f ms (%.1f MB/s)",
+                device, FILES, createTime / 1e6, FILES / (createTime / 1e9), readTime / 1e6, read / (readTime / 1e9) / (1024 * 1024)));
+    }
+}
@@ -0,0 +1,244 @@
+import java.util.Arrays;
+
+/**
+ * Index of the unmapped regions of a process' virtual address space, kept in
+ * a treap (a randomly balanced binary search tree) ordered by start. Every
+ * node also records the longest region in its subtree, so the lowest region
+ * an allocation fits in (first fit) is found in O(log n) in the number of
+ * regions, as are the neighbours a freed region is merged with.
+ * <p>
+ * Nodes live in parallel primitive arrays and are recycled through a free
+ * list, so allocating and freeing doesn't create garbage.
+ */
+public class FreeRegions {
+
+    private static final int NONE = -1;
+
+    private int[] start, length, longest, left, right, priority;
+    /** Unused nodes, linked through {@code left}. */
+    private int freeNodes = NONE;
+    private int used = 0;
+    private int root = NONE;
+    private int count = 0;
+    private final int pages;
+    /** State of the xorshift generator picking node priorities. */
+    private int seed = 0x9E3779B9;
+    /** Results of {@code split}. */
+    private int splitLeft, splitRight;
+
+    /**
+     * @param pages Size of the address space, which starts out entirely free.
+     */
+    public FreeRegions(int pages) {
+        this.pages = pages;
+        int capacity = 16;
+        start = new int[capacity];
+        length = new int[capacity];
+        longest = new int[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        priority = new int[capacity];
+        add(0, pages);
+    }
+
+    /**
+     * Finds the lowest region with room for {@code size} pages starting at a
+     * multiple of {@code alignment}, without taking it.
+     * @return The first virtual page address the pages would have, -1 if
+     * there is no such region.
+     */
+    public int find(int size, int alignment) {
+        int node = find(root, size, alignment);
+        return node == NONE ? -1 : align(start[node], alignment);
+    }
+
+    private int find(int node, int size, int alignment) {
+        if (node == NONE || longest[node] < size)
+            return NONE;
+        int found = find(left[node], size, alignment);
+        if (found != NONE)
+            return found;
+        if (align(start[node], alignment) + size <= start[node] + length[node])
+            return node;
+        return find(right[node], size, alignment);
+    }
+
+    private static int align(int page, int alignment) {
+        return (page + alignment - 1) / alignment * alignment;
+    }
+
+    /**
+     * Takes {@code size} pages starting at a multiple of {@code alignment}
+     * from the lowest region they fit in.
+     * @return The first virtual page address of the pages, -1 if there is no
+     * room.
+     */
+    public int allocate(int size, int alignment) {
+        int node = find(root, size, alignment);
+        if (node == NONE)
+            return -1;
+        int regionStart = start[node];
+        int regionEnd = regionStart + length[node];
+        int aligned = align(regionStart, alignment);
+        remove(regionStart);
+        // give back what is left on either side
+        if (aligned > regionStart)
+            add(regionStart, aligned - regionStart);
+        if (aligned + size < regionEnd)
+            add(aligned + size, regionEnd - aligned - size);
+        return aligned;
+    }
+
+    /**
+     * Returns pages to the index, merging them with the regions around them.
+     * The pages must not already be free.
+     */
+    public void free(int first, int size) {
+        int before = floor(first - 1);
+        if (before != NONE && start[before] + length[before] == first) {
+            first = start[before];
+            size += length[before];
+            remove(first);
+        }
+        int after = floor(first + size);
+        if (after != NONE && start[after] == first + size) {
+            size += length[after];
+            remove(start[after]);
+        }
+        add(first, size);
+    }
+
+    /**
+     * Frees the whole address space.
+     */
+    public void clear() {
+        // every node in use goes back on the free list
+        for (int i = 0; i < used; i++)
+            left[i] = i + 1 < used ? i + 1 : NONE;
+        freeNodes = used > 0 ? 0 : NONE;
+        root = NONE;
+        count = 0;
+        add(0, pages);
+    }
+
+    /**
+     * Number of separate free regions, a measure of fragmentation.
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Returns the region with the highest start at or before {@code page},
+     * {@code NONE} if there is none.
+     */
+    private int floor(int page) {
+        int found = NONE;
+        for (int node = root; node != NONE; )
+            if (start[node] <= page) {
+                found = node;
+                node = right[node];
+            } else
+                node = left[node];
+        return found;
+    }
+
+    private void add(int first, int size) {
+        int node = newNode();
+        start[node] = first;
+        length[node] = size;
+        longest[node] = size;
+        left[node] = right[node] = NONE;
+        split(root, first);
+        int l = splitLeft, r = splitRight;
+        root = merge(merge(l, node), r);
+        count++;
+    }
+
+    /**
+     * Removes the region starting at {@code first}.
+     */
+    private void remove(int first) {
+        split(root, first);
+        int l = splitLeft;
+        split(splitRight, first + 1);
+        int node = splitLeft;
+        root = merge(l, splitRight);
+        left[node] = freeNodes;
+        freeNodes = node;
+        count--;
+    }
+
+    /**
+     * Splits the subtree at {@code node} into regions starting before
+     * {@code key}, left in {@code splitLeft}, and the rest, left in
+     * {@code splitRight}.
+     */
+    private void split(int node, int key) {
+        if (node == NONE) {
+            splitLeft = splitRight = NONE;
+            return;
+        }
+        if (start[node] < key) {
+            split(right[node], key);
+            right[node] = splitLeft;
+            splitLeft = node;
+        } else {
+            split(left[node], key);
+            left[node] = splitRight;
+            splitRight = node;
+        }
+        update(node);
+    }
+
+    /**
+     * Joins two subtrees, all of {@code a}'s regions starting before
+     * {@code b}'s.
+     */
+    private int merge(int a, int b) {
+        if (a == NONE)
+            return b;
+        if (b == NONE)
+            return a;
+        if (priority[a] > priority[b]) {
+            right[a] = merge(right[a], b);
+            update(a);
+            return a;
+        }
+        left[b] = merge(a, left[b]);
+        update(b);
+        return b;
+    }
+
+    private void update(int node) {
+        int max = length[node];
+        if (left[node] != NONE)
+            max = Math.max(max, longest[left[node]]);
+        if (right[node] != NONE)
+            max = Math.max(max, longest[right[node]]);
+        longest[node] = max;
+    }
+
+    private int newNode() {
+        int node = freeNodes;
+        if (node != NONE)
+            freeNodes = left[node];
+        else {
+            if (used == start.length) {
+                int capacity = used * 2;
+                start = Arrays.copyOf(start, capacity);
+                length = Arrays.copyOf(length, capacity);
+                longest = Arrays.copyOf(longest, capacity);
+                left = Arrays.copyOf(left, capacity);
+                right = Arrays.copyOf(right, capacity);
+                priority = Arrays.copyOf(priority, capacity);
+            }
+            node = used++;
+        }
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        priority[node] = seed;
+        return node;
+    }
+}
@@ -4,7 +4,7 @@ public class GoodbyeWorld extends UserlandProcess {
     @Override
     public void main() {
         while (true) {
-            System.out.println("Goodbye world");
+            println("Goodbye world");
             cooperate();
             try {
                 Thread.sleep(50);
@@ -0,0 +1,95 @@
+import java.util.Arrays;
+
+/**
+ * Table mapping small integer handles to values, such as open files to
+ * descriptors. Freed handles are kept on a free list and handed out again
+ * before new ones, so adding and removing are O(1). The table doubles in size
+ * when full.
+ * <p>
+ * {@code get} may be called from other threads while the owner adds and
+ * removes entries, as long as it is not for a handle being removed.
+ * @param <T> Type of the values.
+ */
+public class HandleTable<T> {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private volatile Object[] entries;
+    /** Stack of freed handles. */
+    private int[] freeHandles;
+    private int freeCount = 0;
+    /** Handles at and above this have never been used. */
+    private int nextUnused = 0;
+    private int count = 0;
+
+    public HandleTable() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public HandleTable(int initialCapacity) {
+        entries = new Object[Math.max(initialCapacity, 1)];
+        freeHandles = new int[entries.length];
+    }
+
+    /**
+     * Stores a value under a free handle.
+     * @param value Value to store, not {@code null}.
+     * @return The handle.
+     */
+    public int add(T value) {
+        int handle;
+        if (freeCount > 0)
+            handle = freeHandles[--freeCount];
+        else {
+            if (nextUnused == entries.length) {
+                Object[] grown = Arrays.copyOf(entries, entries.length * 2);
+                freeHandles = Arrays.copyOf(freeHandles, grown.length);
+                entries = grown;
+            }
+            handle = nextUnused++;
+        }
+        entries[handle] = value;
+        count++;
+        return handle;
+    }
+
+    /**
+     * Returns the value stored under {@code handle}, {@code null} if there is
+     * none.
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int handle) {
+        Object[] entries = this.entries;
+        if (handle < 0 || handle >= entries.length)
+            return null;
+        return (T) entries[handle];
+    }
+
+    /**
+     * Removes the value stored under {@code handle}, freeing the handle.
+     * @return The removed value, {@code null} if there was none.
+     */
+    public T remove(int handle) {
+        T value = get(handle);
+        if (value == null)
+            return null;
+        entries[handle] = null;
+        freeHandles[freeCount++] = handle;
+        count--;
+        return value;
+    }
+
+    /**
+     * Number of values stored.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Handles are all less than this.
+     */
+    public int capacity() {
+        return nextUnused;
+    }
+}
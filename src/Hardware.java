@@ -6,20 +6,34 @@ public class Hardware {
     public static final int MEM_SIZE = 1024 * 1024;
     /** Size of each page in bytes */
     public static final int PAGE_SIZE = 1024;
+    /** Size of a large page in bytes. A large page is a single mapping, and
+     * TLB entry, covering this many bytes of contiguous memory. */
+    public static final int LARGE_PAGE_SIZE = 64 * 1024;
+    /** Number of pages covered by a large page. */
+    public static final int LARGE_PAGE_PAGES = LARGE_PAGE_SIZE / PAGE_SIZE;
     /** Number of cached entries (rows) the TLB can store */
     private static final int TLB_SIZE = 2;
     private static final byte[] memory = new byte[MEM_SIZE];
     /** Translation lookaside buffer. Here, the first entry in each row is the
-     * virtual page addresses and the second entry is the physical page
-     * addresses. */
-    private static final int[][] tlb = new int[TLB_SIZE][2];
+     * virtual page addresses, the second entry is the physical page
+     * addresses, the third is the number of pages the entry covers, more
+     * than one for a large page, and the fourth is 1 if the pages may be
+     * written and 0 if they are read-only. */
+    private static final int[][] tlb = new int[TLB_SIZE][4];
+    /** Number of translations not found in the TLB. */
+    private static long tlbMisses = 0;
+    /** Dirty bit of each physical page, set whenever the page is written
+     * through a virtual address. */
+    private static final boolean[] dirty = new boolean[MEM_SIZE / PAGE_SIZE];
 
     public static byte Read(int address) {
-        return memory[translateAddress(address)];
+        return memory[translateAddress(address, false)];
     }
 
     public static void Write(int address, byte value) {
-        memory[translateAddress(address)] = value;
+        int physicalAddress = translateAddress(address, true);
+        memory[physicalAddress] = value;
+        dirty[physicalAddress / PAGE_SIZE] = true;
     }
 
     /**
@@ -38,18 +52,34 @@ public class Hardware {
         memory[address] = value;
     }
 
+    /**
+     * Gives direct access to physical memory so that devices can transfer data
+     * straight into and out of page frames, bypassing virtual to physical
+     * address translation. Used by the operating system only.
+     */
+    public static byte[] getPhysicalMemory() {
+        return memory;
+    }
+
     /**
      * Translates a virtual address into its corresponding physical address. If
      * no physical address exists, terminate the currently running process.
+     * A write to a page only mapped read-only faults into the operating
+     * system just like a miss, to let it give the page a frame of its own.
+     * The process may wait while the page is read in, and then looks the
+     * translation up again.
      * @param virtualAddress Virtual address to lookup.
+     * @param write Whether the address is being written to.
      * @return Physical address
      */
-    private static int translateAddress(int virtualAddress) {
+    private static int translateAddress(int virtualAddress, boolean write) {
         int virtualPage = virtualAddress / PAGE_SIZE;
-        int physicalPage = searchTLB(virtualPage);
-        if (physicalPage == -1)
-            OS.GetMapping(virtualPage);
-        physicalPage = searchTLB(virtualPage);
+        int physicalPage = searchTLB(virtualPage, write);
+        if (physicalPage == -1) {
+            tlbMisses++;
+            while (physicalPage == -1 && OS.GetMapping(virtualPage, write))
+                physicalPage = searchTLB(virtualPage, write);
+        }
         if (physicalPage == -1) {
             // no physical address match, segfault
             System.out.println("Segmentation fault: Illegal memory access");
@@ -63,12 +93,13 @@ public class Hardware {
      * {@code virtualPage}, returning its associated physical page address.
      * Returns -1 if no entry exists.
      * @param virtualPage Virtual page address.
+     * @param write Whether only an entry allowing writes will do.
      * @return Physical page address associated with {@code virtualPage}.
      */
-    private static int searchTLB(int virtualPage) {
+    private static int searchTLB(int virtualPage, boolean write) {
         for (int i = 0; i < tlb.length; i++)
-            if (tlb[i][0] == virtualPage)
-                return tlb[i][1];
+            if (virtualPage >= tlb[i][0] && virtualPage < tlb[i][0] + tlb[i][2] && (!write || tlb[i][3] == 1))
+                return tlb[i][1] + virtualPage - tlb[i][0];
         return -1;
     }
 
@@ -79,9 +110,73 @@ public class Hardware {
      * @param physicalPage Physical page address.
      */
     public static void updateTLB(int virtualPage, int physicalPage) {
+        updateTLB(virtualPage, physicalPage, 1);
+    }
+
+    /**
+     * Overwrites a random row TLB with an entry covering {@code pages}
+     * contiguous pages, such as a large page.
+     * @param virtualPage First virtual page address.
+     * @param physicalPage First physical page address.
+     * @param pages Number of pages covered.
+     */
+    public static void updateTLB(int virtualPage, int physicalPage, int pages) {
+        updateTLB(virtualPage, physicalPage, pages, true);
+    }
+
+    /**
+     * Overwrites a random row TLB with an entry covering {@code pages}
+     * contiguous pages, which may be read-only.
+     * @param virtualPage First virtual page address.
+     * @param physicalPage First physical page address.
+     * @param pages Number of pages covered.
+     * @param writable Whether the pages may be written.
+     */
+    public static void updateTLB(int virtualPage, int physicalPage, int pages, boolean writable) {
         int row = rng.nextInt(tlb.length);
         tlb[row][0] = virtualPage;
         tlb[row][1] = physicalPage;
+        tlb[row][2] = pages;
+        tlb[row][3] = writable ? 1 : 0;
+    }
+
+    /**
+     * Removes any TLB entry covering a physical page, used when that page is
+     * taken away from the process it belongs to.
+     * @param physicalPage Physical page address.
+     */
+    public static void invalidateTLB(int physicalPage) {
+        for (int i = 0; i < tlb.length; i++)
+            if (physicalPage >= tlb[i][1] && physicalPage < tlb[i][1] + tlb[i][2]) {
+                tlb[i][0] = -1;
+                tlb[i][1] = -1;
+                tlb[i][2] = 0;
+                tlb[i][3] = 0;
+            }
+    }
+
+    public static long getTLBMisses() {
+        return tlbMisses;
+    }
+
+    /**
+     * Whether a physical page has been written to since its dirty bit was
+     * last cleared.
+     */
+    public static boolean isDirty(int physicalPage) {
+        return dirty[physicalPage];
+    }
+
+    /**
+     * Sets the dirty bit of a physical page, used by the operating system when
+     * writing to a page directly.
+     */
+    public static void markDirty(int physicalPage) {
+        dirty[physicalPage] = true;
+    }
+
+    public static void clearDirty(int physicalPage) {
+        dirty[physicalPage] = false;
     }
 
     /**
@@ -92,6 +187,8 @@ public class Hardware {
         for (int i = 0; i < tlb.length; i++) {
             tlb[i][0] = -1;
             tlb[i][1] = -1;
+            tlb[i][2] = 0;
+            tlb[i][3] = 0;
         }
     }
 }
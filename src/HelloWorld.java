@@ -4,7 +4,7 @@ public class HelloWorld extends UserlandProcess {
     @Override
     public void main() {
         while (true) {
-            System.out.println("Hello world");
+            println("Hello world");
             cooperate();
             try {
                 Thread.sleep(50);
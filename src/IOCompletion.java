@@ -0,0 +1,34 @@
+/**
+ * Completion notice for an asynchronous read or write, see
+ * {@code OS.ReadAsync} and {@code OS.WriteAsync}.
+ */
+public class IOCompletion {
+
+    private final int requestID;
+    private final Object result;
+
+    public IOCompletion(int requestID, Object result) {
+        this.requestID = requestID;
+        this.result = result;
+    }
+
+    /**
+     * The ID returned by the {@code ReadAsync} or {@code WriteAsync} call
+     * this completes.
+     */
+    public int getRequestID() {
+        return requestID;
+    }
+
+    /**
+     * The bytes read for a read, or the number of bytes written for a write.
+     */
+    public Object getResult() {
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s requestid=%d", super.toString(), requestID);
+    }
+}
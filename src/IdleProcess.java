@@ -1,10 +1,20 @@
 public class IdleProcess extends UserlandProcess {
+
+    /** Most free physical pages zeroed each time the idle process runs. */
+    private static final int PAGES_TO_ZERO = 16;
+    /** The idle process naps for 50 ms at a time, in steps of 100 us. */
+    private static final int NAP_STEPS = 500;
+    private static final int NAP_STEP_NANOS = 100_000;
+
     @Override
     public void main() {
         while (true) {
             try {
+                OS.ZeroFreePages(PAGES_TO_ZERO);
                 cooperate();
-                Thread.sleep(50);
+                // nap in short steps, to notice being preempted
+                for (int i = 0; i < NAP_STEPS && !isQuantumExpired(); i++)
+                    Thread.sleep(0, NAP_STEP_NANOS);
             } catch (Exception e) { }
         }
     }
@@ -0,0 +1,101 @@
+import java.io.IOException;
+
+/**
+ * Filesystem device keeping every file inside a single disk image, see
+ * {@code DiskImage}, rather than one host file per file like
+ * {@code FakeFileSystem}. Files are created when first opened.
+ */
+public class ImageFileSystem implements Device {
+
+    /** Host file holding the disk image. */
+    private static final String IMAGE_PATH = "disk.img";
+    /** Disk image shared by every instance, opened on first use. */
+    private static DiskImage image;
+
+    private final HandleTable<Handle> handles = new HandleTable<>();
+
+    /**
+     * An open handle to a file.
+     */
+    private static class Handle {
+        final int inode;
+        /** Offset into the file the handle reads and writes at. */
+        int position = 0;
+
+        Handle(int inode) {
+            this.inode = inode;
+        }
+    }
+
+    /**
+     * The disk image shared by every instance, e.g. for its statistics.
+     */
+    public static synchronized DiskImage getImage() {
+        if (image == null) {
+            try {
+                image = new DiskImage(IMAGE_PATH);
+            } catch (IOException e) {
+                throw new RuntimeException("Could not open disk image", e);
+            }
+        }
+        return image;
+    }
+
+    @Override
+    public int Open(String s) {
+        if (s == null || s.isEmpty())
+            throw new RuntimeException("Invalid file name");
+        int inode = getImage().lookup(s, true);
+        if (inode == -1)
+            return -1;
+        return handles.add(new Handle(inode));
+    }
+
+    @Override
+    public void Close(int id) {
+        handles.remove(id);
+    }
+
+    @Override
+    public byte[] Read(int id, int size) {
+        byte[] bytes = new byte[size];
+        ReadInto(id, bytes, 0, size);
+        return bytes;
+    }
+
+    @Override
+    public int ReadInto(int id, byte[] buffer, int offset, int length) {
+        Handle handle = handles.get(id);
+        int read = image.read(handle.inode, handle.position, buffer, offset, length);
+        handle.position += read;
+        return read;
+    }
+
+    @Override
+    public int ReadAt(int id, int position, byte[] buffer, int offset, int length) {
+        return image.read(handles.get(id).inode, position, buffer, offset, length);
+    }
+
+    @Override
+    public void Seek(int id, int to) {
+        handles.get(id).position = to;
+    }
+
+    @Override
+    public int Write(int id, byte[] data) {
+        return WriteFrom(id, data, 0, data.length);
+    }
+
+    @Override
+    public int WriteFrom(int id, byte[] buffer, int offset, int length) {
+        Handle handle = handles.get(id);
+        int written = image.write(handle.inode, handle.position, buffer, offset, length);
+        handle.position += written;
+        return written;
+    }
+
+    @Override
+    public int WriteAt(int id, int position, byte[] data) {
+        return image.write(handles.get(id).inode, position, data, 0, data.length);
+    }
+}
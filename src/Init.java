@@ -9,10 +9,18 @@ public class Init extends UserlandProcess {
 
 //        OS.CreateProcess(new RNGProcess());
 //        OS.CreateProcess(new FSTestProcess());
+//        OS.CreateProcess(new SyscallRingBenchmarkProcess());
+//        OS.CreateProcess(new AsyncIOBenchmarkProcess());
+
+//        OS.CreateProcess(new PipeBenchmarkProcess());
 
 //        OS.CreateProcess(new PingProcess());
 //        OS.CreateProcess(new PongProcess());
 
+//        for (int i = 0; i < 3; i++)
+//            OS.CreateProcess(new SubscriberProcess());
+//        OS.CreateProcess(new PublisherProcess());
+
 //        OS.CreateProcess(new MemoryAllocateAndFreeProcess());
 //        OS.CreateProcess(new MemoryAllocateAndFreeProcess());
 //        OS.CreateProcess(new MemoryAllocateAndFreeProcess());
@@ -20,6 +28,22 @@ public class Init extends UserlandProcess {
         for (int i = 0; i < 20; i++)
             OS.CreateProcess(new Piggy());
 
+//        OS.CreateProcess(new MemoryFileTestProcess());
+//        OS.CreateProcess(new MemoryMapTestProcess());
+//        OS.CreateProcess(new FileSystemBenchmarkProcess());
+//        OS.CreateProcess(new DescriptorChurnBenchmarkProcess());
+//        OS.CreateProcess(new RandomBenchmarkProcess());
+//        OS.CreateProcess(new LargePageBenchmarkProcess());
+//        OS.CreateProcess(new VirtualMemoryChurnBenchmarkProcess());
+//        OS.CreateProcess(new VirtualMemoryAllocationRateBenchmarkProcess());
+//        OS.CreateProcess(new SwapScanBenchmarkProcess());
+//        OS.CreateProcess(new SwapPoolBenchmarkProcess());
+//        OS.CreateProcess(new PageMergingBenchmarkProcess());
+//        OS.CreateProcess(new PageMergingProcess());
+//        OS.CreateProcess(new ZeroedPageBenchmarkProcess());
+//        OS.CreateProcess(new ThrashingBenchmarkProcess());
+//        OS.CreateProcess(new ResidencySchedulingBenchmarkProcess());
+//        OS.CreateProcess(new NonBlockingFaultBenchmarkProcess());
 //        OS.CreateProcess(new MemoryIllegalAccessTestProcess());
 //        OS.CreateProcess(new MemoryOOMTestProcess());
 
@@ -1,18 +1,121 @@
-import java.util.Random;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntSupplier;
 
 public class Kernel extends Process implements Device {
 
     private final Scheduler scheduler;
-    /** Array where indices are page address, and values indicate whether that
-     * page is in use {@code true} or not in use {@code false}. */
-    private final boolean[] usedPages = new boolean[Hardware.MEM_SIZE / Hardware.PAGE_SIZE];
+    /** Frame table: indices are physical page addresses, and values are the
+     * PID of the process whose page occupies that physical page, -1 when it
+     * is not in use, {@code SHARED_FRAME} when it is shared by several pages
+     * and {@code ZERO_FRAME} for the zero page. A large page occupies all of
+     * its physical pages. */
+    private final int[] frameOwners = new int[Hardware.MEM_SIZE / Hardware.PAGE_SIZE];
+    private static final int SHARED_FRAME = -2;
+    private static final int ZERO_FRAME = -3;
+    /** Virtual page address each physical page in use is mapped at, in its
+     * owner. */
+    private final int[] frameVirtualPages = new int[Hardware.MEM_SIZE / Hardware.PAGE_SIZE];
+    /** Next physical page {@code FindPageToSwapOut} looks at. */
+    private int clockHand = 0;
+    /** Physical page that is always zero, mapped read-only for every page
+     * that hasn't been written yet. The last one, so it only keeps the last
+     * run of physical pages from being used for a large page. */
+    private final int zeroPage = frameOwners.length - 1;
+    /** Number of pages currently reading from the zero page. */
+    private int zeroPages = 0;
+    /** Sharers of the frames that identical pages were merged into. */
+    private final SharedFrames sharedFrames = new SharedFrames(frameOwners.length);
+    /** Checksum of each physical page when {@code MergePages} last looked at
+     * it. Pages are only merged once their checksum has stayed the same for a
+     * whole scan, to leave alone those being written to. */
+    private final long[] frameChecksums = new long[frameOwners.length];
+    /** Next physical page {@code MergePages} looks at. */
+    private int mergeHand = 0;
+    /** Free physical pages known to hold only zeros, a stack kept filled by
+     * {@code ZeroFreePages} so pages that must start out zeroed needn't wait
+     * for it. */
+    private final int[] zeroedPages = new int[frameOwners.length];
+    private int zeroedPageCount = 0;
+    /** Index of each physical page in {@code zeroedPages}, -1 if it isn't
+     * in it. */
+    private final int[] zeroedPageIndices = new int[frameOwners.length];
+    /** Number of zeroed pages {@code ZeroFreePages} keeps ready. */
+    private static final int ZEROED_PAGES_TARGET = 64;
+    /** Next physical page {@code ZeroFreePages} looks at. */
+    private int zeroingHand = 0;
+    /** Whether processes are suspended while memory is overcommitted, see
+     * {@code OS.SetLoadControl}. */
+    private boolean loadControl = true;
+    /** How often working sets and fault rates are sampled, and load control
+     * acts. */
+    private static final long LOAD_CONTROL_PERIOD_NANOS = 500_000_000L;
+    /** Page faults per second, machine wide, above which memory is taken to
+     * be overcommitted. */
+    private static final int THRASHING_FAULT_RATE = 200;
+    /** Whether a process' working set is swapped in before it runs, see
+     * {@code OS.SetPrefault}. */
+    private boolean prefault = false;
+    private long loadControlPeriodStart = System.nanoTime();
+    private long loadControlPeriodFaults = 0;
+    private double pageFaultRate = 0;
+    private final MemoryStats memoryStats = new MemoryStats();
     private final VirtualFileSystem vfs = new VirtualFileSystem();
     private final int pageFile = vfs.Open("file pagefile");
     /** Offset into the page file where the next page should be written to */
     private int pageFileOffset = 0;
+    /** Most pages moved to or from the page file in one operation. */
+    private static final int MAX_SWAP_CLUSTER = 32;
+    /** Pages moved to or from the page file in one operation, see
+     * {@code OS.SetSwapCluster}. */
+    private int swapCluster = 8;
+    /** Staging areas for pages swapped in (gathered from the pool and the
+     * page file, which is read into a buffer of its own), and out, together.
+     * Separate, as making room for pages being swapped in may swap others
+     * out. */
+    private final byte[] swapInBuffer = new byte[MAX_SWAP_CLUSTER * Hardware.PAGE_SIZE];
+    /** Read for page faults the kernel serves itself, see {@code SwapPageIn}. */
+    private final SwapRead swapRead = new SwapRead(MAX_SWAP_CLUSTER);
+    private final byte[] swapOutBuffer = new byte[MAX_SWAP_CLUSTER * Hardware.PAGE_SIZE];
+    /** Which pages of {@code swapInBuffer} were gathered by
+     * {@code FinishSwapRead}. */
+    private final boolean[] swapInGathered = new boolean[MAX_SWAP_CLUSTER];
+    /** Whether page faults on the page file are served on an I/O worker while
+     * other processes run, see {@code OS.SetNonBlockingFaults}. */
+    private boolean nonBlockingFaults = true;
+    /** Compressed tier of swap, in front of the page file. */
+    private final SwapPool swapPool = new SwapPool(256 * 1024);
+    /** Number of mapped pages referencing each device (VFS id), see
+     * {@code MapFile}. */
+    private final HashMap<Integer, Integer> fileMappings = new HashMap<>();
+    /** Devices closed by their process while still mapped. They are closed
+     * once their last page is unmapped. */
+    private final HashSet<Integer> closeWhenUnmapped = new HashSet<>();
+    /** Number of threads performing asynchronous device reads and writes. */
+    private static final int IO_WORKERS = 2;
+    private final ExecutorService ioWorkers = Executors.newFixedThreadPool(IO_WORKERS, r -> {
+        Thread thread = new Thread(r, "IOWorker");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private int nextIORequestID = 1;
+    /** Whether the system call being run has put its caller into a waiting
+     * state, see {@code ReturnTo}. */
+    private boolean callerBlocked = false;
+    /** Most page file reads in flight at once for non-blocking page faults.
+     * Each has a buffer of its own, created when first needed and reused
+     * after. */
+    private static final int MAX_SWAP_READS = 2 * IO_WORKERS;
+    private final AsyncSwapRead[] swapReads = new AsyncSwapRead[MAX_SWAP_READS];
 
     public Kernel(UserlandProcess init) {
         super();
+        Arrays.fill(frameOwners, -1);
+        frameOwners[zeroPage] = ZERO_FRAME;
+        Arrays.fill(zeroedPageIndices, -1);
         Hardware.clearTLB();
         scheduler = new Scheduler(init);
     }
@@ -26,8 +129,10 @@ public class Kernel extends Process implements Device {
             // `scheduler.currentlyRunning.start()` will fail. This is because
             // thread execution starts in the superclass.
         while (true) {
+            PCB caller = scheduler.currentlyRunning;
+            callerBlocked = false;
             switch (OS.currentCall) { // get a job from OS, do it
-                case CreateProcess -> OS.retVal = CreateProcess((UserlandProcess) OS.parameters.get(0), (OS.PriorityType) OS.parameters.get(1));
+                case CreateProcess -> OS.retVal = CreateProcess((UserlandProcess) OS.parameters.get(0), (OS.PriorityType) OS.parameters.get(1), (int) OS.parameters.get(2));
                 case SwitchProcess -> SwitchProcess();
                 // Priority scheduler
                 case Sleep  -> Sleep((int)OS.parameters.get(0));
@@ -36,17 +141,50 @@ public class Kernel extends Process implements Device {
                 // Devices
                 case Open  -> OS.retVal = Open((String)OS.parameters.get(0));
                 case Close -> Close((int)OS.parameters.get(0));
-                case Read  -> OS.retVal = Read((int)OS.parameters.get(0), (int)OS.parameters.get(1));
+                case Read  -> ReturnTo(Read((int)OS.parameters.get(0), (int)OS.parameters.get(1)));
                 case Seek  -> Seek((int)OS.parameters.get(0), (int)OS.parameters.get(1));
-                case Write -> OS.retVal = Write((int)OS.parameters.get(0), (byte[])OS.parameters.get(1));
+                case Write -> ReturnTo(Write((int)OS.parameters.get(0), (byte[])OS.parameters.get(1)));
+                case ReadInto -> ReturnTo(ReadInto((int)OS.parameters.get(0), (byte[])OS.parameters.get(1), (int)OS.parameters.get(2), (int)OS.parameters.get(3)));
+                case ReadAt   -> OS.retVal = ReadAt((int)OS.parameters.get(0), (int)OS.parameters.get(1), (byte[])OS.parameters.get(2), (int)OS.parameters.get(3), (int)OS.parameters.get(4));
+                case WriteAt  -> OS.retVal = WriteAt((int)OS.parameters.get(0), (int)OS.parameters.get(1), (byte[])OS.parameters.get(2));
+                case ReadV    -> ReturnTo(ReadV((int)OS.parameters.get(0), (byte[][])OS.parameters.get(1)));
+                case WriteV   -> ReturnTo(WriteV((int)OS.parameters.get(0), (byte[][])OS.parameters.get(1)));
+                case ReadToMemory    -> OS.retVal = ReadToMemory((int)OS.parameters.get(0), (int)OS.parameters.get(1), (int)OS.parameters.get(2));
+                case WriteFromMemory -> OS.retVal = WriteFromMemory((int)OS.parameters.get(0), (int)OS.parameters.get(1), (int)OS.parameters.get(2));
+                case SubmitBatch -> OS.retVal = SubmitBatch((SyscallRing)OS.parameters.get(0));
+                case ReadAsync  -> OS.retVal = ReadAsync((int)OS.parameters.get(0), (int)OS.parameters.get(1));
+                case WriteAsync -> OS.retVal = WriteAsync((int)OS.parameters.get(0), (byte[])OS.parameters.get(1));
+                case WaitForIO  -> ReturnTo(WaitForIO((int)OS.parameters.get(0)));
                 // Messages
                 case GetPIDByName   -> OS.retVal = GetPidByName((String)OS.parameters.get(0));
-                case SendMessage    -> SendMessage((KernelMessage)OS.parameters.get(0));
-                case WaitForMessage -> WaitForMessage();
+                case SendMessage    -> SendMessage((KernelMessage)OS.parameters.get(0), (boolean)OS.parameters.get(1));
+                case Subscribe      -> OS.retVal = Subscribe((String)OS.parameters.get(0));
+                case Unsubscribe    -> OS.retVal = Unsubscribe((String)OS.parameters.get(0));
+                case Publish        -> OS.retVal = Publish((String)OS.parameters.get(0), (int)OS.parameters.get(1), (byte[])OS.parameters.get(2));
+                case GetMailboxStats -> OS.retVal = scheduler.GetMailboxStats((int)OS.parameters.get(0));
+                case GetChannelStats -> OS.retVal = scheduler.GetChannelStats((String)OS.parameters.get(0));
+                case WaitForMessage -> WaitForMessage((int)OS.parameters.get(0), (long)OS.parameters.get(1), (int)OS.parameters.get(2));
                 // Memory
-                case GetMapping     -> GetMapping((int)OS.parameters.get(0));
-                case AllocateMemory -> OS.retVal = AllocateMemory((int)OS.parameters.get(0));
+                case GetMapping     -> GetMapping((int)OS.parameters.get(0), (boolean)OS.parameters.get(1));
+                case AllocateMemory -> OS.retVal = AllocateMemory((int)OS.parameters.get(0), (boolean)OS.parameters.get(1));
                 case FreeMemory     -> OS.retVal = FreeMemory((int)OS.parameters.get(0), (int)OS.parameters.get(1));
+                case MapFile        -> OS.retVal = MapFile((int)OS.parameters.get(0), (int)OS.parameters.get(1), (int)OS.parameters.get(2));
+                case UnmapFile      -> OS.retVal = UnmapFile((int)OS.parameters.get(0), (int)OS.parameters.get(1));
+                case GetMemoryStats -> OS.retVal = GetMemoryStats();
+                case SetSwapCluster -> SetSwapCluster((int)OS.parameters.get(0));
+                case SetSwapPoolSize -> SetSwapPoolSize((int)OS.parameters.get(0));
+                case MergePages     -> OS.retVal = MergePages((int)OS.parameters.get(0));
+                case ZeroFreePages  -> OS.retVal = ZeroFreePages((int)OS.parameters.get(0));
+                case SetLoadControl -> SetLoadControl((boolean)OS.parameters.get(0));
+                case SetResidencyScheduling -> scheduler.SetResidencyScheduling((boolean)OS.parameters.get(0));
+                case SetPrefault    -> prefault = (boolean)OS.parameters.get(0);
+                case SetNonBlockingFaults -> nonBlockingFaults = (boolean)OS.parameters.get(0);
+            }
+            // the TLB holds the translations of the process that called
+            if (scheduler.currentlyRunning != caller) {
+                Hardware.clearTLB();
+                if (prefault)
+                    PrefaultWorkingSet(scheduler.currentlyRunning);
             }
             scheduler.currentlyRunning.start();
             stop();
@@ -58,17 +196,43 @@ public class Kernel extends Process implements Device {
      */
     @Override
     public void start() {
+        // grab the caller before the kernel runs, as the kernel may switch
+        // `currentlyRunning` to another process before we get to stop
+        PCB caller = scheduler.currentlyRunning;
         super.start();
-        scheduler.currentlyRunning.stop();
+        caller.stop();
+    }
+
+    /**
+     * Returns a value from a system call that may have put its caller into a
+     * waiting state. If it did, the result is handed to the caller by the
+     * scheduler when it wakes instead, which may already have happened if the
+     * call completed right away and the caller was picked to run again.
+     * @param value Value to return.
+     */
+    private void ReturnTo(Object value) {
+        if (!callerBlocked)
+            OS.retVal = value;
+    }
+
+    /**
+     * Puts the caller of the current system call into a waiting state, see
+     * {@code Scheduler.Block}.
+     */
+    private void Block(PendingCall call) {
+        callerBlocked = true;
+        scheduler.Block(call);
     }
 
     private void SwitchProcess() {
+        if (System.nanoTime() - loadControlPeriodStart >= LOAD_CONTROL_PERIOD_NANOS)
+            ControlLoad();
         scheduler.SwitchProcess();
         Hardware.clearTLB();
     }
 
-    private int CreateProcess(UserlandProcess up, OS.PriorityType priority) {
-        return scheduler.CreateProcess(up, priority);
+    private int CreateProcess(UserlandProcess up, OS.PriorityType priority, int mailboxCapacity) {
+        return scheduler.CreateProcess(up, priority, mailboxCapacity);
     }
 
     private void Sleep(int mills) {
@@ -76,9 +240,8 @@ public class Kernel extends Process implements Device {
     }
 
     private void Exit() {
-        for (int id : scheduler.currentlyRunning.descriptors)
-            if (id != -1)
-                vfs.Close(id);
+        for (int vfsID : scheduler.currentlyRunning.removeAllDescriptors())
+            CloseDevice(vfsID);
         FreeAllMemory();
         scheduler.SwitchProcess(true);
     }
@@ -94,227 +257,1522 @@ public class Kernel extends Process implements Device {
     // Devices
 
     public int Open(String s) {
-        PCB p = scheduler.currentlyRunning;
-        for (int i = 0; i < p.descriptors.length; i++)
-            if (p.descriptors[i] == -1) {
-                p.descriptors[i] = vfs.Open(s);
-                return i;
-            }
-        return -1;
+        int vfsID = vfs.Open(s);
+        if (vfsID == -1)
+            return -1;
+        return scheduler.currentlyRunning.addDescriptor(vfsID);
     }
 
     public void Close(int id) {
-        PCB p = scheduler.currentlyRunning;
-        int vfsID = p.descriptors[id];
+        int vfsID = scheduler.currentlyRunning.removeDescriptor(id);
         if (vfsID == -1)
             return;
-        vfs.Close(vfsID);
-        p.descriptors[id] = -1;
+        CloseDevice(vfsID);
+    }
+
+    /**
+     * Closes a device, unless pages are still mapped from it, in which case
+     * it is closed once they are all unmapped. Asynchronous requests on it
+     * still in flight are let finish first, see {@code VirtualFileSystem.Close}.
+     * @param vfsID Device to close.
+     */
+    private void CloseDevice(int vfsID) {
+        if (fileMappings.containsKey(vfsID))
+            closeWhenUnmapped.add(vfsID);
+        else
+            vfs.Close(vfsID);
     }
 
+    /**
+     * Reads from a device. If the device has nothing to read yet (e.g. an
+     * empty pipe), the caller waits until it does.
+     */
     public byte[] Read(int id, int size) {
         PCB p = scheduler.currentlyRunning;
-        int vfsID = p.descriptors[id];
-        return vfs.Read(vfsID, size);
+        int vfsID = p.getDescriptor(id);
+        if (vfs.canRead(vfsID))
+            return vfs.Read(vfsID, size);
+        Block(new PendingCall() {
+            private byte[] data;
+
+            @Override
+            public boolean tryComplete() {
+                if (!vfs.canRead(vfsID))
+                    return false;
+                data = vfs.Read(vfsID, size);
+                return true;
+            }
+
+            @Override
+            public Object getResult() {
+                return data;
+            }
+        });
+        return null;
     }
 
     public void Seek(int id, int to) {
         PCB p = scheduler.currentlyRunning;
-        int vfsID = p.descriptors[id];
+        int vfsID = p.getDescriptor(id);
         vfs.Seek(vfsID, to);
     }
 
+    /**
+     * Writes to a device. If the device cannot take all of {@code data} yet
+     * (e.g. a full pipe), the caller waits until the rest has been written.
+     */
     public int Write(int id, byte[] data) {
         PCB p = scheduler.currentlyRunning;
-        int vfsID = p.descriptors[id];
-        return vfs.Write(vfsID, data);
+        int vfsID = p.getDescriptor(id);
+        int written = vfs.canWrite(vfsID) ? vfs.Write(vfsID, data) : 0;
+        if (written < 0 || written == data.length || vfs.canWrite(vfsID))
+            return written;
+        Block(new PendingCall() {
+            private int total = written;
+
+            @Override
+            public boolean tryComplete() {
+                while (total < data.length) {
+                    if (!vfs.canWrite(vfsID))
+                        return false;
+                    int n = vfs.Write(vfsID, Arrays.copyOfRange(data, total, data.length));
+                    if (n < 0) {
+                        // reader went away, report what made it through
+                        if (total == 0)
+                            total = -1;
+                        return true;
+                    }
+                    total += n;
+                }
+                return true;
+            }
+
+            @Override
+            public Object getResult() {
+                return total;
+            }
+        });
+        return -1;
+    }
+
+    @Override
+    public int ReadInto(int id, byte[] buffer, int offset, int length) {
+        PCB p = scheduler.currentlyRunning;
+        int vfsID = p.getDescriptor(id);
+        return ReadWhenReady(vfsID, () -> vfs.ReadInto(vfsID, buffer, offset, length));
+    }
+
+    /**
+     * Positional read. Fails with -1 on devices that may block, such as pipes,
+     * as they are not seekable.
+     */
+    @Override
+    public int ReadAt(int id, int position, byte[] buffer, int offset, int length) {
+        PCB p = scheduler.currentlyRunning;
+        int vfsID = p.getDescriptor(id);
+        if (vfs.isBlockingDevice(vfsID))
+            return -1;
+        return vfs.ReadAt(vfsID, position, buffer, offset, length);
+    }
+
+    /**
+     * Positional write. Fails with -1 on devices that may block, such as
+     * pipes, as they are not seekable.
+     */
+    @Override
+    public int WriteAt(int id, int position, byte[] data) {
+        PCB p = scheduler.currentlyRunning;
+        int vfsID = p.getDescriptor(id);
+        if (vfs.isBlockingDevice(vfsID))
+            return -1;
+        return vfs.WriteAt(vfsID, position, data);
+    }
+
+    @Override
+    public int ReadV(int id, byte[][] buffers) {
+        PCB p = scheduler.currentlyRunning;
+        int vfsID = p.getDescriptor(id);
+        return ReadWhenReady(vfsID, () -> vfs.ReadV(vfsID, buffers));
+    }
+
+    /**
+     * Gather write. Devices that may block, such as pipes, take the buffers
+     * as a single write so that the caller waits until all of it is written.
+     */
+    @Override
+    public int WriteV(int id, byte[][] buffers) {
+        PCB p = scheduler.currentlyRunning;
+        int vfsID = p.getDescriptor(id);
+        if (!vfs.isBlockingDevice(vfsID))
+            return vfs.WriteV(vfsID, buffers);
+        int length = 0;
+        for (byte[] buffer : buffers)
+            length += buffer.length;
+        byte[] data = new byte[length];
+        int offset = 0;
+        for (byte[] buffer : buffers) {
+            System.arraycopy(buffer, 0, data, offset, buffer.length);
+            offset += buffer.length;
+        }
+        return Write(id, data);
+    }
+
+    /**
+     * Reads from a device straight into the currently running process'
+     * memory, one page frame at a time. Pipes are not supported, read them
+     * with {@code ReadInto} instead.
+     * @param address Virtual address to start filling at.
+     * @param length Number of bytes to read.
+     * @return Number of bytes read, -1 on failure. Stops early at the end of
+     * the device or the first unmapped page.
+     */
+    private int ReadToMemory(int id, int address, int length) {
+        PCB p = scheduler.currentlyRunning;
+        int vfsID = p.getDescriptor(id);
+        if (vfsID == -1 || vfs.isBlockingDevice(vfsID))
+            return -1;
+        byte[] memory = Hardware.getPhysicalMemory();
+        int total = 0;
+        while (total < length) {
+            int physicalAddress = ResolvePhysicalAddress(p, address + total, true);
+            if (physicalAddress == -1)
+                break;
+            int n = Math.min(length - total, Hardware.PAGE_SIZE - (address + total) % Hardware.PAGE_SIZE);
+            int read = vfs.ReadInto(vfsID, memory, physicalAddress, n);
+            Hardware.markDirty(physicalAddress / Hardware.PAGE_SIZE);
+            if (read <= 0)
+                break;
+            total += read;
+            if (read < n)
+                break;
+        }
+        return total;
+    }
+
+    /**
+     * Writes to a device straight out of the currently running process'
+     * memory, one page frame at a time. Pipes are not supported, write them
+     * with {@code Write} instead.
+     * @param address Virtual address to start writing from.
+     * @param length Number of bytes to write.
+     * @return Number of bytes written, -1 on failure. Stops early at the first
+     * unmapped page.
+     */
+    private int WriteFromMemory(int id, int address, int length) {
+        PCB p = scheduler.currentlyRunning;
+        int vfsID = p.getDescriptor(id);
+        if (vfsID == -1 || vfs.isBlockingDevice(vfsID))
+            return -1;
+        byte[] memory = Hardware.getPhysicalMemory();
+        int total = 0;
+        while (total < length) {
+            int physicalAddress = ResolvePhysicalAddress(p, address + total, false);
+            if (physicalAddress == -1)
+                break;
+            int n = Math.min(length - total, Hardware.PAGE_SIZE - (address + total) % Hardware.PAGE_SIZE);
+            int written = vfs.WriteFrom(vfsID, memory, physicalAddress, n);
+            if (written <= 0)
+                break;
+            total += written;
+            if (written < n)
+                break;
+        }
+        return total;
+    }
+
+    /**
+     * Translates a virtual address of a process into a physical address,
+     * swapping its page into memory if necessary.
+     * @param write Whether the kernel is going to write to the address.
+     * @return The physical address, -1 if the address is not mapped.
+     */
+    private int ResolvePhysicalAddress(PCB p, int virtualAddress, boolean write) {
+        if (virtualAddress < 0)
+            return -1;
+        int virtualPage = virtualAddress / Hardware.PAGE_SIZE;
+        long entry = p.getMapping(virtualPage);
+        if (entry == 0)
+            return -1;
+        int head = Page.head(entry, virtualPage);
+        entry = Access(p, head, p.getMapping(head), write);
+        int physicalPage = Page.isZero(entry) ? zeroPage : Page.location(entry) + virtualPage - head;
+        return physicalPage * Hardware.PAGE_SIZE + virtualAddress % Hardware.PAGE_SIZE;
+    }
+
+    /**
+     * Runs a read once the device has something to read (e.g. a non-empty
+     * pipe), putting the caller into a waiting state until then.
+     * @param vfsID Device to read from.
+     * @param read The read to run.
+     * @return The read's result. -1 if the caller was put into a waiting state.
+     */
+    private int ReadWhenReady(int vfsID, IntSupplier read) {
+        if (vfs.canRead(vfsID))
+            return read.getAsInt();
+        Block(new PendingCall() {
+            private int result;
+
+            @Override
+            public boolean tryComplete() {
+                if (!vfs.canRead(vfsID))
+                    return false;
+                result = read.getAsInt();
+                return true;
+            }
+
+            @Override
+            public Object getResult() {
+                return result;
+            }
+        });
+        return -1;
+    }
+
+    /**
+     * Starts reading from a device on a kernel I/O worker, returning right
+     * away. The bytes read arrive on the caller's completion queue, see
+     * {@code WaitForIO}. Devices that may block, such as pipes, cannot be
+     * read asynchronously.
+     * @return ID identifying the request's completion. -1 on failure.
+     */
+    private int ReadAsync(int id, int size) {
+        PCB p = scheduler.currentlyRunning;
+        int vfsID = p.getDescriptor(id);
+        // held until the request has run, so closing the descriptor meanwhile
+        // can't free the handle for another file
+        if (vfsID == -1 || vfs.isBlockingDevice(vfsID) || !vfs.Hold(vfsID))
+            return -1;
+        int requestID = nextIORequestID++;
+        ioWorkers.execute(() -> {
+            byte[] data = vfs.Read(vfsID, size);
+            vfs.Release(vfsID);
+            p.completeIO(new IOCompletion(requestID, data));
+        });
+        return requestID;
+    }
+
+    /**
+     * Starts writing to a device on a kernel I/O worker, returning right
+     * away. The number of bytes written arrives on the caller's completion
+     * queue, see {@code WaitForIO}. Devices that may block, such as pipes,
+     * cannot be written asynchronously.
+     * @return ID identifying the request's completion. -1 on failure.
+     */
+    private int WriteAsync(int id, byte[] data) {
+        PCB p = scheduler.currentlyRunning;
+        int vfsID = p.getDescriptor(id);
+        if (vfsID == -1 || vfs.isBlockingDevice(vfsID) || !vfs.Hold(vfsID))
+            return -1;
+        int requestID = nextIORequestID++;
+        ioWorkers.execute(() -> {
+            int written = vfs.Write(vfsID, data);
+            vfs.Release(vfsID);
+            p.completeIO(new IOCompletion(requestID, written));
+        });
+        return requestID;
+    }
+
+    /**
+     * Takes the oldest completed asynchronous request of the currently
+     * running process. If none has completed yet, the process waits for one.
+     * @param timeout Maximum time to wait in milliseconds. 0 returns
+     *                immediately and a negative value waits forever.
+     * @return The completion, or {@code null} if the process was put into a
+     * waiting state or none completed in time.
+     */
+    private IOCompletion WaitForIO(int timeout) {
+        PCB p = scheduler.currentlyRunning;
+        IOCompletion completion = p.pollIOCompletion();
+        if (completion != null || timeout == 0)
+            return completion;
+        long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+        Block(new PendingCall() {
+            private IOCompletion completion;
+
+            @Override
+            public boolean tryComplete() {
+                completion = p.pollIOCompletion();
+                return completion != null || System.currentTimeMillis() >= deadline;
+            }
+
+            @Override
+            public Object getResult() {
+                return completion;
+            }
+        });
+        return null;
+    }
+
+    /**
+     * Runs the calls queued on a process' submission ring, placing their
+     * results on its completion ring. Stops early if the completion ring
+     * fills up, leaving the remaining calls queued. None of the calls block.
+     * @param ring The process' syscall ring.
+     * @return Number of calls run.
+     */
+    private int SubmitBatch(SyscallRing ring) {
+        PCB p = scheduler.currentlyRunning;
+        int processed = 0;
+        while (ring.hasSubmission() && !ring.isCompletionRingFull()) {
+            Object first = ring.submissionFirstArg();
+            Object second = ring.submissionSecondArg();
+            Object result = null;
+            switch (ring.submissionOp()) {
+                case Open  -> result = Open((String)first);
+                case Close -> Close((int)first);
+                case Read  -> {
+                    int vfsID = p.getDescriptor((int)first);
+                    if (vfs.canRead(vfsID))
+                        result = vfs.Read(vfsID, (int)second);
+                }
+                case Seek  -> Seek((int)first, (int)second);
+                case Write -> {
+                    int vfsID = p.getDescriptor((int)first);
+                    result = vfs.canWrite(vfsID) ? vfs.Write(vfsID, (byte[])second) : 0;
+                }
+                case SendMessage -> {
+                    KernelMessage msgCopy = new KernelMessage((KernelMessage)first);
+                    msgCopy.setSenderPID(p.pid);
+                    result = scheduler.DeliverMessage(msgCopy, false);
+                }
+                default -> throw new IllegalArgumentException(String.format("%s cannot be batched", ring.submissionOp()));
+            }
+            ring.complete(ring.submissionUserData(), result);
+            ring.consumeSubmission();
+            processed++;
+        }
+        return processed;
     }
 
     // ipc
 
-    private void SendMessage(KernelMessage msg) {
+    private void SendMessage(KernelMessage msg, boolean block) {
         KernelMessage msgCopy = new KernelMessage(msg);
         msgCopy.setSenderPID(scheduler.currentlyRunning.pid);
-        scheduler.DeliverMessage(msgCopy);
+        Boolean delivered = scheduler.DeliverMessage(msgCopy, block);
+        if (delivered != null)
+            OS.retVal = delivered;
     }
 
-    private void WaitForMessage() {
-        KernelMessage msg = scheduler.AwaitMessage();
+    private void WaitForMessage(int senderPID, long typeMask, int timeout) {
+        // cleared first so that a timeout of 0 with no message returns null
+        OS.retVal = null;
+        KernelMessage msg = scheduler.AwaitMessage(senderPID, typeMask, timeout);
         if (msg != null)
             OS.retVal = msg;
     }
 
+    private boolean Subscribe(String channel) {
+        return scheduler.Subscribe(channel);
+    }
+
+    private boolean Unsubscribe(String channel) {
+        return scheduler.Unsubscribe(channel);
+    }
+
+    private int Publish(String channel, int type, byte[] data) {
+        // a single copy is shared by every subscriber
+        return scheduler.Publish(channel, type, data.clone());
+    }
+
     // Memory
 
     /**
      * Given a virtual page address, get the mapping for that address from the
      * currently running process, and update the TLB with this new mapping.
+     * Pages without a frame of their own are mapped read-only, unless the
+     * access is a write, which gives them one. A page in the page file may
+     * instead be read while the process waits, see {@code StartSwapIn}.
+     * Returns {@code true} if the page is mapped, once its translation is in
+     * the TLB or the caller has waited for it, and {@code false} if it isn't.
      * @param virtualPage Virtual page address to lookup.
+     * @param write Whether the page is being written to.
      */
-    private void GetMapping(int virtualPage) {
-        Page map = scheduler.currentlyRunning.getMapping(virtualPage);
-        if (map == null)
+    private void GetMapping(int virtualPage, boolean write) {
+        PCB p = scheduler.currentlyRunning;
+        long entry = p.getMapping(virtualPage);
+        if (entry == 0) {
             // no mapping exists, segfault
+            OS.retVal = false;
+            return;
+        }
+        // a large page is described, and mapped by a single TLB entry, from
+        // its first page
+        int head = Page.head(entry, virtualPage);
+        entry = p.getMapping(head);
+        if (nonBlockingFaults && Page.isSwapped(entry) && !Page.isLarge(entry) && StartSwapIn(p, head, entry)) {
+            // the result is handed over by the scheduler when it wakes
             return;
-        if (map.physicalPage == -1)
-            // page is on disk, swap it into memory
-            SwapPageIn(map);
-        Hardware.updateTLB(virtualPage, map.physicalPage);
+        }
+        entry = Access(p, head, entry, write);
+        if (!Page.isAccessed(entry))
+            p.recordAccess(head);
+        p.setMapping(head, entry | Page.REFERENCED | Page.ACCESSED);
+        if (Page.isZero(entry))
+            Hardware.updateTLB(head, zeroPage, 1, false);
+        else
+            Hardware.updateTLB(head, Page.location(entry), Page.pages(entry), !Page.isShared(entry));
+        OS.retVal = true;
+    }
+
+    /**
+     * Makes a page accessible: brings it into memory if it isn't, and gives
+     * it a frame of its own if it is being written to and doesn't have one.
+     * @param p Process the page belongs to.
+     * @param virtualPage Virtual page address of the page's entry.
+     * @param entry The page's entry.
+     * @param write Whether the page is being written to.
+     * @return The page's new entry, present unless it is a zero page being
+     * read.
+     */
+    private long Access(PCB p, int virtualPage, long entry, boolean write) {
+        if (Page.isZero(entry))
+            return write ? ZeroFill(p, virtualPage, entry) : entry;
+        if (!Page.isPresent(entry))
+            // page is on disk or not loaded from its file yet
+            entry = PageIn(p, virtualPage, entry);
+        if (write && Page.isShared(entry))
+            entry = CopyOnWrite(p, virtualPage, entry);
+        return entry;
+    }
+
+    /**
+     * Gives a page that was reading from the zero page a zeroed frame of its
+     * own, on its first write.
+     * @return The page's new entry.
+     */
+    private long ZeroFill(PCB p, int virtualPage, long entry) {
+        int freePage = GetZeroedPage();
+        entry = Page.present(entry, freePage);
+        Occupy(p, virtualPage, entry);
+        // drop the read-only translation
+        Hardware.invalidateTLB(zeroPage);
+        zeroPages--;
+        memoryStats.zeroFills++;
+        return entry;
+    }
+
+    /**
+     * Gives a page in a shared frame a copy of the frame of its own, on its
+     * first write since being merged.
+     * @return The page's new entry.
+     */
+    private long CopyOnWrite(PCB p, int virtualPage, long entry) {
+        int freePage = GetFreePage();
+        long current = p.getMapping(virtualPage);
+        if (!Page.isShared(current))
+            // making room swapped the shared frame out, and the page with it
+            return Access(p, virtualPage, current, true);
+        int sharedPage = Page.location(entry);
+        byte[] memory = Hardware.getPhysicalMemory();
+        System.arraycopy(memory, sharedPage * Hardware.PAGE_SIZE, memory, freePage * Hardware.PAGE_SIZE, Hardware.PAGE_SIZE);
+        RemoveSharer(sharedPage, p.pid, virtualPage);
+        entry = Page.present(current, freePage);
+        Occupy(p, virtualPage, entry);
+        Hardware.invalidateTLB(sharedPage);
+        memoryStats.copyOnWrites++;
+        return entry;
+    }
+
+    /**
+     * Brings a page that is not in memory into memory, from the swap pool,
+     * the page file, or the file it is mapped from.
+     * @param p Process the page belongs to.
+     * @param virtualPage Virtual page address of the page's entry.
+     * @param entry Entry of a page not currently in memory.
+     * @return The page's new entry.
+     */
+    private long PageIn(PCB p, int virtualPage, long entry) {
+        memoryStats.pageFaults++;
+        p.recordPageFault();
+        long start = System.nanoTime();
+        if (Page.isCompressed(entry)) {
+            entry = SwapPageIn(p, virtualPage, entry);
+            memoryStats.poolFaults++;
+            memoryStats.poolFaultNanos += System.nanoTime() - start;
+            return entry;
+        }
+        if (Page.isSwapped(entry)) {
+            entry = SwapPageIn(p, virtualPage, entry);
+            memoryStats.pageFileFaults++;
+            memoryStats.pageFileFaultNanos += System.nanoTime() - start;
+            return entry;
+        }
+        return FileFaultIn(p, virtualPage, entry);
     }
 
     /**
      * Creates a new memory allocation and maps it to the currently running
-     * process. -1 on failure.
+     * process. -1 on failure. As much of the allocation as possible is made up
+     * of large pages, if allowed and an aligned region of the process' virtual
+     * memory is free. Small pages read from the zero page, and only get a
+     * frame once they are written to. Memory always starts out zeroed.
      * @param size Size to allocate in words.
+     * @param largePages Whether large pages may be used.
      * @return The virtual address of the first word in the allocation.
      */
-    private int AllocateMemory(int size) {
+    private int AllocateMemory(int size, boolean largePages) {
         if (size % Hardware.PAGE_SIZE != 0)
             return -1;
+        PCB p = scheduler.currentlyRunning;
         int pages = size / Hardware.PAGE_SIZE;
-        Page[] allocation = new Page[pages];
-        GetFreePages(allocation);
-        // update the process' page table
-        int virtualAddress = scheduler.currentlyRunning.allocateMemory(allocation);
-        if (virtualAddress == -1)
+        if (!p.hasEmptyVirtualPageRegion(pages, 1))
             // process' page table is full
             return -1;
-        // mark new pages as "in use"
-        for (int i = 0; i < allocation.length; i++)
-            usedPages[allocation[i].physicalPage] = true;
-        return virtualAddress;
+        int largeCount = largePages ? size / Hardware.LARGE_PAGE_SIZE : 0;
+        if (largeCount > 0 && !p.hasEmptyVirtualPageRegion(pages, Hardware.LARGE_PAGE_PAGES)) {
+            memoryStats.largePageFallbacks++;
+            largeCount = 0;
+        }
+        int start = p.allocateMemory(pages, largeCount > 0 ? Hardware.LARGE_PAGE_PAGES : 1);
+        int virtualPage = start;
+        for (int i = 0; i < largeCount; i++) {
+            int physicalPage = GetFreeLargePage();
+            // the physical pages may still hold whatever their last owner
+            // left in them
+            for (int j = 0; j < Hardware.LARGE_PAGE_PAGES; j++)
+                if (zeroedPageIndices[physicalPage + j] != -1)
+                    memoryStats.zeroedPoolHits++;
+                else
+                    ZeroInline(physicalPage + j);
+            for (int j = 1; j < Hardware.LARGE_PAGE_PAGES; j++)
+                p.setMapping(virtualPage + j, Page.anonymous(true));
+            Occupy(p, virtualPage, Page.present(Page.anonymous(true), physicalPage));
+            virtualPage += Hardware.LARGE_PAGE_PAGES;
+            memoryStats.largePages++;
+        }
+        for (; virtualPage < start + pages; virtualPage++) {
+            p.setMapping(virtualPage, Page.zero());
+            zeroPages++;
+        }
+        return start * Hardware.PAGE_SIZE;
     }
 
     private boolean FreeMemory(int pointer, int size) {
         if (size % Hardware.PAGE_SIZE != 0 || pointer % Hardware.PAGE_SIZE != 0)
             return false;
-        // clear process' page table
+        PCB p = scheduler.currentlyRunning;
         int virtualPage = pointer / Hardware.PAGE_SIZE;
         int pages = size / Hardware.PAGE_SIZE;
-        Page[] physicalPages = scheduler.currentlyRunning.freeMemory(virtualPage, pages);
-        // mark freed pages "free" in the os
-        for (Page page : physicalPages)
-            if (page.physicalPage > 0)
-                usedPages[page.physicalPage] = false;
+        // large pages can only be freed whole
+        if (Page.head(p.getMapping(virtualPage), virtualPage) != virtualPage)
+            return false;
+        if (Page.head(p.getMapping(virtualPage + pages), virtualPage + pages) != virtualPage + pages)
+            return false;
+        // mark freed pages "free" in the os, once for each large page
+        for (int i = virtualPage; i < virtualPage + pages; i++) {
+            long entry = p.getMapping(i);
+            if (entry != 0 && Page.head(entry, i) == i)
+                ReleasePage(p, i, entry);
+        }
+        // clear process' page table
+        p.freeMemory(virtualPage, pages);
         return true;
     }
 
     private void FreeAllMemory() {
         PCB p = scheduler.currentlyRunning;
-        Page[] freedPages = p.freeAllMemory();
-        Page page;
-        for (int i = 0; i < freedPages.length && freedPages[i] != null; i++) {
-            page = freedPages[i];
-            if (page.physicalPage > 0)
-                usedPages[page.physicalPage] = false;
-        }
-    }
-
-    /**
-     * Searches the kernel's page allocation array for free pages. When free
-     * pages are found, they are added to {@code allocationMap} at index
-     * {@code last}. When no free pages remain, we borrow from other processes,
-     * swapping their page out to disk.
-     * @param allocation Array containing pages for the new memory allocation.
-     *                   Its length is the number of pages to allocate.
-     */
-    private void GetFreePages(Page[] allocation) {
-        int next = 0;
-        // look for free pages
-        for (int i = 0; i < usedPages.length && next < allocation.length; i++)
-            if (!usedPages[i]) {
-                Page p = new Page();
-                p.physicalPage = i;
-                allocation[next++] = p;
+        PageTable table = p.getPageTable();
+        for (int i = table.next(0); i != -1; i = table.next(i + 1)) {
+            long entry = table.get(i);
+            if (Page.head(entry, i) == i)
+                ReleasePage(p, i, entry);
+        }
+        p.freeAllMemory();
+    }
+
+    private MemoryStats GetMemoryStats() {
+        MemoryStats stats = new MemoryStats(memoryStats);
+        stats.tlbMisses = Hardware.getTLBMisses();
+        stats.idleNanos = scheduler.GetIdleNanos();
+        stats.zeroPages = zeroPages;
+        stats.sharedFrames = sharedFrames.getSharedFrames();
+        stats.framesSavedByMerging = sharedFrames.getFramesSaved();
+        stats.zeroedPoolDepth = zeroedPageCount;
+        stats.pageFaultRate = Math.round(pageFaultRate);
+        stats.suspendedProcesses = scheduler.GetSuspendedCount();
+        return stats;
+    }
+
+    private void SetSwapCluster(int pages) {
+        swapCluster = Math.max(1, Math.min(pages, MAX_SWAP_CLUSTER));
+    }
+
+    private void SetSwapPoolSize(int bytes) {
+        swapPool.setCapacity(Math.max(0, bytes));
+        MakeRoomInSwapPool();
+    }
+
+    private void SetLoadControl(boolean enabled) {
+        loadControl = enabled;
+        if (!enabled)
+            for (PCB p = scheduler.GetSuspended(); p != null; p = scheduler.GetSuspended()) {
+                scheduler.Resume(p);
+                memoryStats.resumptions++;
             }
-        // borrow pages if necessary
-        int start = next;
-        while (next < allocation.length) {
-            Page victim = FindPageToSwapOut();
-            // make sure we don't swap the same page twice
-            boolean pageExists = false;
-            for (int i = start; i < next; i++)
-                if (victim == allocation[i]) {
-                    pageExists = true;
-                    break;
-                }
-            if (pageExists)
+    }
+
+    /**
+     * Load control, run every {@code LOAD_CONTROL_PERIOD_NANOS}. Samples each
+     * process' working set and page fault rate. While the machine faults more
+     * than {@code THRASHING_FAULT_RATE} times a second and the working sets of
+     * the processes not suspended don't fit in memory, one more process is
+     * suspended each period: taken off the run queues and swapped out
+     * entirely, so the others can keep their working sets in memory. Once
+     * faulting has calmed down, the process suspended longest is resumed as
+     * soon as its working set fits next to the others'.
+     */
+    private void ControlLoad() {
+        long now = System.nanoTime();
+        double seconds = (now - loadControlPeriodStart) / 1e9;
+        pageFaultRate = (memoryStats.pageFaults - loadControlPeriodFaults) / seconds;
+        loadControlPeriodStart = now;
+        loadControlPeriodFaults = memoryStats.pageFaults;
+        int activeWorkingSets = 0;
+        for (PCB p : scheduler.GetProcesses()) {
+            p.sampleWorkingSet(seconds);
+            if (!p.isSuspended())
+                activeWorkingSets += p.getWorkingSet();
+        }
+        if (!loadControl)
+            return;
+        // all but the zero page
+        int frames = frameOwners.length - 1;
+        if (pageFaultRate > THRASHING_FAULT_RATE && activeWorkingSets > frames) {
+            PCB victim = scheduler.GetProcessToSuspend();
+            if (victim == null)
+                return;
+            victim.setSuspendedWorkingSet(Math.max(victim.getWorkingSet(), victim.getResidentPages()));
+            scheduler.Suspend(victim);
+            SwapProcessOut(victim);
+            memoryStats.suspensions++;
+        } else if (pageFaultRate <= THRASHING_FAULT_RATE / 2) {
+            PCB next = scheduler.GetSuspended();
+            if (next == null)
+                return;
+            if (activeWorkingSets > 0 && activeWorkingSets + next.getSuspendedWorkingSet() > frames)
+                return;
+            scheduler.Resume(next);
+            memoryStats.resumptions++;
+        }
+    }
+
+    /**
+     * Swaps the pages a process accessed over the last period it ran in back
+     * into memory, before it runs again. Skipped for a working set of more
+     * than half of memory, which would mostly push itself back out.
+     */
+    private void PrefaultWorkingSet(PCB p) {
+        if (p.getSwappedPages() == 0 || p.getWorkingSet() > (frameOwners.length - 1) / 2)
+            return;
+        int[] pages = p.getWorkingSetPages();
+        for (int i = 0; i < p.getWorkingSetPageCount(); i++) {
+            long entry = p.getMapping(pages[i]);
+            // the page may have been unmapped, or read ahead, since
+            if (!Page.isSwapped(entry) && !Page.isCompressed(entry))
                 continue;
-            int physicalAddress = SwapPageOut(victim);
-            Page p = new Page();
-            p.physicalPage = physicalAddress;
-            allocation[next++] = p;
+            SwapPageIn(p, pages[i], entry);
+            memoryStats.pagesPrefaulted++;
         }
     }
 
     /**
-     * Takes a page currently stored on disk and swaps it into memory. If memory
-     * is full, then borrow a page from another, or potentially, our own
-     * process. That is, writing the victim's page contents to disk in order
-     * to make room for the page we want to swap in.
-     * @param page Page currently on disk.
+     * Swaps every page of a process that is in a frame of its own out of
+     * memory.
      */
-    private void SwapPageIn(Page page) {
-        // find a free page to store the page
-        int freePage = -1;
-        for (int i = 0; i < usedPages.length; i++)
-            if (!usedPages[i]) {
-                freePage = i;
+    private void SwapProcessOut(PCB p) {
+        PageTable table = p.getPageTable();
+        // unreferenced, so neighbouring pages go out together
+        for (int i = table.next(0); i != -1; i = table.next(i + 1)) {
+            long entry = table.get(i);
+            if (Page.isReferenced(entry))
+                table.set(i, entry & ~Page.REFERENCED);
+        }
+        for (int i = table.next(0); i != -1; i = table.next(i + 1)) {
+            long entry = table.get(i);
+            if (Page.isPresent(entry) && !Page.isShared(entry) && Page.head(entry, i) == i)
+                SwapPageOut(p, i, entry);
+        }
+    }
+
+    /**
+     * Scans the next {@code pages} physical pages for small pages of
+     * anonymous memory identical to one seen earlier in the scan, and merges
+     * them into a single read-only shared frame, freeing the others. A page
+     * holding only zeros is moved to the zero page instead. The scan picks up
+     * where the last call left off, starting over at the end of memory.
+     * @return Number of physical pages freed.
+     */
+    private int MergePages(int pages) {
+        byte[] memory = Hardware.getPhysicalMemory();
+        int freed = 0;
+        for (int n = 0; n < pages; n++) {
+            int physicalPage = mergeHand;
+            mergeHand = (mergeHand + 1) % frameOwners.length;
+            if (physicalPage == 0)
+                sharedFrames.clearCandidates();
+            if (!IsMergeable(physicalPage))
+                continue;
+            memoryStats.pagesScanned++;
+            long checksum = SharedFrames.checksum(memory, physicalPage * Hardware.PAGE_SIZE);
+            if (checksum != frameChecksums[physicalPage]) {
+                // written to since the last scan, or not scanned before
+                frameChecksums[physicalPage] = checksum;
+                continue;
+            }
+            if (frameOwners[physicalPage] != SHARED_FRAME && IsSamePage(physicalPage, zeroPage)) {
+                PCB owner = scheduler.GetProcess(frameOwners[physicalPage]);
+                int virtualPage = frameVirtualPages[physicalPage];
+                long entry = owner.getMapping(virtualPage);
+                Vacate(entry);
+                owner.setMapping(virtualPage, Page.zeroed(entry));
+                AddZeroedPage(physicalPage);
+                zeroPages++;
+                memoryStats.pagesMerged++;
+                freed++;
+                continue;
+            }
+            int other = sharedFrames.findCandidate(checksum, physicalPage);
+            if (other == -1 || other == physicalPage)
+                continue;
+            if (!IsMergeable(other) || !IsSamePage(other, physicalPage)) {
+                // the page seen earlier has changed or gone
+                sharedFrames.replaceCandidate(checksum, physicalPage);
+                continue;
+            }
+            if (frameOwners[physicalPage] != SHARED_FRAME)
+                MergeInto(other, physicalPage);
+            else if (frameOwners[other] != SHARED_FRAME) {
+                MergeInto(physicalPage, other);
+                sharedFrames.replaceCandidate(checksum, physicalPage);
+            } else
+                continue;
+            freed++;
+        }
+        return freed;
+    }
+
+    /**
+     * Releases a page that is being removed from a process' page table,
+     * freeing its physical pages. Changes to a page mapped from a file are
+     * written back first.
+     * @param p Process the page belongs to.
+     * @param virtualPage Virtual page address of the page's entry.
+     * @param entry The page's entry.
+     */
+    private void ReleasePage(PCB p, int virtualPage, long entry) {
+        if (Page.isFile(entry)) {
+            FileMapping mapping = p.getFileMapping(Page.mapping(entry));
+            if (Page.isPresent(entry) && Hardware.isDirty(Page.location(entry)))
+                WriteBackFilePage(mapping, virtualPage, Page.location(entry));
+            if (--mapping.pages == 0)
+                p.removeFileMapping(Page.mapping(entry));
+            int references = fileMappings.get(mapping.file) - 1;
+            if (references > 0)
+                fileMappings.put(mapping.file, references);
+            else {
+                fileMappings.remove(mapping.file);
+                if (closeWhenUnmapped.remove(mapping.file))
+                    vfs.Close(mapping.file);
+            }
+        }
+        if (Page.isShared(entry))
+            RemoveSharer(Page.location(entry), p.pid, virtualPage);
+        else if (Page.isPresent(entry))
+            Vacate(entry);
+        else if (Page.isCompressed(entry))
+            swapPool.remove(Page.location(entry));
+        else if (Page.isZero(entry))
+            zeroPages--;
+    }
+
+    /**
+     * Maps part of a file into the currently running process' memory. No
+     * memory is used until a page is accessed, at which point it is read from
+     * the file. Under memory pressure, unchanged pages are simply dropped and
+     * changed pages are written back to the file rather than the page file.
+     * @param id The process' descriptor of the file.
+     * @param offset Offset into the file to start mapping at. Must be a
+     *               multiple of the page size.
+     * @param length Number of bytes to map.
+     * @return The virtual address the mapping starts at. -1 on failure.
+     */
+    private int MapFile(int id, int offset, int length) {
+        PCB p = scheduler.currentlyRunning;
+        int vfsID = p.getDescriptor(id);
+        if (vfsID == -1 || vfs.isBlockingDevice(vfsID))
+            return -1;
+        if (offset < 0 || offset % Hardware.PAGE_SIZE != 0 || length <= 0)
+            return -1;
+        int pages = (length + Hardware.PAGE_SIZE - 1) / Hardware.PAGE_SIZE;
+        int start = p.allocateMemory(pages, 1);
+        if (start == -1)
+            return -1;
+        long entry = Page.file(p.addFileMapping(new FileMapping(vfsID, start, offset, length)));
+        for (int i = 0; i < pages; i++)
+            p.setMapping(start + i, entry);
+        fileMappings.merge(vfsID, pages, Integer::sum);
+        return start * Hardware.PAGE_SIZE;
+    }
+
+    /**
+     * Removes a mapping created by {@code MapFile}, writing changed pages back
+     * to the file.
+     * @param address Virtual address the mapping starts at.
+     * @param length Number of bytes mapped.
+     * @return {@code false} if the range is not entirely mapped from a file.
+     */
+    private boolean UnmapFile(int address, int length) {
+        PCB p = scheduler.currentlyRunning;
+        if (address % Hardware.PAGE_SIZE != 0 || length <= 0)
+            return false;
+        int virtualPage = address / Hardware.PAGE_SIZE;
+        int pages = (length + Hardware.PAGE_SIZE - 1) / Hardware.PAGE_SIZE;
+        for (int i = virtualPage; i < virtualPage + pages; i++)
+            if (!Page.isFile(p.getMapping(i)))
+                return false;
+        for (int i = virtualPage; i < virtualPage + pages; i++)
+            ReleasePage(p, i, p.getMapping(i));
+        p.freeMemory(virtualPage, pages);
+        return true;
+    }
+
+    /**
+     * Finds a free, aligned, run of physical pages for a large page. If there
+     * is none, the run with the fewest pages in use is emptied by swapping
+     * its pages out. The run holding the zero page is never used.
+     * @return The first physical page address of the run.
+     */
+    private int GetFreeLargePage() {
+        int best = -1, bestUsed = Integer.MAX_VALUE;
+        for (int start = 0; start < frameOwners.length; start += Hardware.LARGE_PAGE_PAGES) {
+            if (zeroPage >= start && zeroPage < start + Hardware.LARGE_PAGE_PAGES)
+                continue;
+            int used = 0;
+            for (int i = start; i < start + Hardware.LARGE_PAGE_PAGES; i++)
+                if (frameOwners[i] != -1)
+                    used++;
+            if (used < bestUsed) {
+                best = start;
+                bestUsed = used;
+                if (used == 0)
+                    break;
+            }
+        }
+        for (int i = best; i < best + Hardware.LARGE_PAGE_PAGES; i++)
+            if (frameOwners[i] != -1)
+                SwapPhysicalPageOut(i);
+        return best;
+    }
+
+    /**
+     * Puts a page into memory: sets its entry, and records it in the frame
+     * table as the owner of its physical pages.
+     * @param p Process the page belongs to.
+     * @param virtualPage Virtual page address of the page's entry.
+     * @param entry The page's entry, present.
+     */
+    private void Occupy(PCB p, int virtualPage, long entry) {
+        p.setMapping(virtualPage, entry);
+        int physicalPage = Page.location(entry);
+        for (int i = 0; i < Page.pages(entry); i++) {
+            RemoveZeroedPage(physicalPage + i);
+            frameOwners[physicalPage + i] = p.pid;
+            frameVirtualPages[physicalPage + i] = virtualPage + i;
+        }
+        p.addResidentPages(Page.pages(entry));
+    }
+
+    /**
+     * Takes a page out of memory, marking its physical pages "free". The
+     * caller updates the page's entry.
+     * @param entry The page's entry, present.
+     */
+    private void Vacate(long entry) {
+        int physicalPage = Page.location(entry);
+        scheduler.GetProcess(frameOwners[physicalPage]).addResidentPages(-Page.pages(entry));
+        for (int i = 0; i < Page.pages(entry); i++)
+            frameOwners[physicalPage + i] = -1;
+        Hardware.invalidateTLB(physicalPage);
+    }
+
+    /**
+     * Takes a page currently stored on disk, or in the swap pool, and swaps it
+     * into memory. If memory is full, then borrow a page from another, or
+     * potentially, our own process. That is, writing the victim's page
+     * contents to disk in order to make room for the page we want to swap in.
+     * <p>
+     * Neighbouring pages of the process that were swapped out along with the
+     * page are brought in too, see {@code PlanSwapRead}.
+     * @param p Process the page belongs to.
+     * @param virtualPage Virtual page address of the page's entry.
+     * @param entry Entry of a page currently swapped or compressed.
+     * @return The page's new entry.
+     */
+    private long SwapPageIn(PCB p, int virtualPage, long entry) {
+        if (Page.isLarge(entry)) {
+            // read page contents from disk straight into memory
+            memoryStats.swapReads++;
+            int freePage = GetFreeLargePage();
+            long start = System.nanoTime();
+            vfs.ReadAt(pageFile, Page.location(entry) * Hardware.PAGE_SIZE, Hardware.getPhysicalMemory(), freePage * Hardware.PAGE_SIZE, Page.pages(entry) * Hardware.PAGE_SIZE);
+            memoryStats.swapReadStallNanos += System.nanoTime() - start;
+            entry = Page.present(entry, freePage);
+            Occupy(p, virtualPage, entry);
+            memoryStats.pagesSwappedIn += Page.pages(entry);
+            return entry;
+        }
+        SwapRead read = PlanSwapRead(swapRead, p, virtualPage, entry);
+        if (read.lowSlot != -1) {
+            memoryStats.swapReads++;
+            long start = System.nanoTime();
+            vfs.ReadAt(pageFile, read.lowSlot * Hardware.PAGE_SIZE, read.buffer, 0, read.bytes());
+            memoryStats.swapReadStallNanos += System.nanoTime() - start;
+        }
+        return FinishSwapRead(read);
+    }
+
+    /**
+     * Starts reading a small page from the page file on an I/O worker, and
+     * puts the process that faulted on it into a waiting state, running
+     * others until the page is in memory. Once it is, the process is woken to
+     * look up the page's translation again.
+     * @param p Process the page belongs to.
+     * @param virtualPage Virtual page address of the page's entry.
+     * @param entry Entry of a small page currently swapped.
+     * @return {@code false} if {@code MAX_SWAP_READS} reads are already in
+     * flight, in which case the kernel must read the page itself.
+     */
+    private boolean StartSwapIn(PCB p, int virtualPage, long entry) {
+        AsyncSwapRead asyncRead = null;
+        for (int i = 0; i < swapReads.length && asyncRead == null; i++) {
+            if (swapReads[i] == null)
+                swapReads[i] = new AsyncSwapRead();
+            if (!swapReads[i].inFlight)
+                asyncRead = swapReads[i];
+        }
+        if (asyncRead == null)
+            return false;
+        memoryStats.pageFaults++;
+        memoryStats.pageFileFaults++;
+        memoryStats.nonBlockingFaults++;
+        memoryStats.swapReads++;
+        p.recordPageFault();
+        asyncRead.inFlight = true;
+        asyncRead.start = System.nanoTime();
+        PlanSwapRead(asyncRead.read, p, virtualPage, entry);
+        ioWorkers.execute(asyncRead);
+        Block(asyncRead);
+        return true;
+    }
+
+    /**
+     * A page file read for a non-blocking page fault: read by an I/O worker,
+     * and finished by the kernel when the scheduler retries it as the call
+     * the faulting process waits on. Reused for one fault after another.
+     */
+    private class AsyncSwapRead implements Runnable, PendingCall {
+        final SwapRead read = new SwapRead(MAX_SWAP_CLUSTER);
+        boolean inFlight = false;
+        long start;
+
+        @Override
+        public void run() {
+            vfs.ReadAt(pageFile, read.lowSlot * Hardware.PAGE_SIZE, read.buffer, 0, read.bytes());
+            read.complete();
+            scheduler.PreemptIdle();
+        }
+
+        @Override
+        public boolean tryComplete() {
+            if (!read.isDone())
+                return false;
+            FinishSwapRead(read);
+            memoryStats.pageFileFaultNanos += System.nanoTime() - start;
+            inFlight = false;
+            return true;
+        }
+
+        @Override
+        public Object getResult() {
+            return true;
+        }
+    }
+
+    /**
+     * Picks the pages to bring into memory along with a small page: its
+     * neighbours that were swapped out along with it, up to
+     * {@code swapCluster} pages in all, those in the pool, and those next to
+     * each other in the page file, which are read in a single operation.
+     * @param read Read to set up.
+     * @return {@code read}.
+     */
+    private SwapRead PlanSwapRead(SwapRead read, PCB p, int virtualPage, long entry) {
+        // pages in the page file must be in consecutive slots
+        int lowSlot = Page.isSwapped(entry) ? Page.location(entry) : -1;
+        int highSlot = lowSlot;
+        int first = virtualPage, last = virtualPage;
+        while (last - first + 1 < swapCluster) {
+            long next = p.getMapping(last + 1);
+            if (Page.isSwapped(next) && !Page.isLarge(next) && (highSlot == -1 || Page.location(next) == highSlot + 1)) {
+                highSlot = Page.location(next);
+                if (lowSlot == -1)
+                    lowSlot = highSlot;
+            } else if (!Page.isCompressed(next))
                 break;
+            last++;
+        }
+        while (last - first + 1 < swapCluster) {
+            long previous = p.getMapping(first - 1);
+            if (Page.isSwapped(previous) && !Page.isLarge(previous) && (lowSlot == -1 || Page.location(previous) == lowSlot - 1)) {
+                lowSlot = Page.location(previous);
+                if (highSlot == -1)
+                    highSlot = lowSlot;
+            } else if (!Page.isCompressed(previous))
+                break;
+            first--;
+        }
+        read.plan(p, virtualPage, entry, first, last, lowSlot, highSlot);
+        return read;
+    }
+
+    /**
+     * Puts the pages of a swap read into memory, once its page file slots
+     * have been read. A neighbour that is no longer where it was when the read
+     * was planned, which can happen to one in the pool while the read is on an
+     * I/O worker, is left out.
+     * @return The new entry of the page faulted on.
+     */
+    private long FinishSwapRead(SwapRead read) {
+        PCB p = read.process;
+        // gather every page first, as making room in memory may move pages
+        // from the pool to the page file
+        for (int i = read.first; i <= read.last; i++) {
+            long neighbour = p.getMapping(i);
+            int index = i - read.first;
+            swapInGathered[index] = true;
+            if (Page.isCompressed(neighbour))
+                swapPool.load(Page.location(neighbour), swapInBuffer, index * Hardware.PAGE_SIZE);
+            else if (Page.isSwapped(neighbour) && read.covers(Page.location(neighbour)))
+                System.arraycopy(read.buffer, (Page.location(neighbour) - read.lowSlot) * Hardware.PAGE_SIZE, swapInBuffer, index * Hardware.PAGE_SIZE, Hardware.PAGE_SIZE);
+            else
+                swapInGathered[index] = false;
+        }
+        // the faulting page goes last, so making room for the others can't
+        // push it out again. All of them are marked referenced, giving them
+        // a chance to be used before they can be swapped out.
+        for (int i = read.first; i <= read.last; i++)
+            if (i != read.virtualPage && swapInGathered[i - read.first]) {
+                SwapInFromBuffer(p, i, p.getMapping(i), i - read.first);
+                memoryStats.pagesReadAhead++;
             }
-        // if no free pages exist, borrow from another process
-        if (freePage == -1) {
-            Page victim;
-            do {
-                victim = FindPageToSwapOut();
-            } while (victim == page);
-            freePage = SwapPageOut(victim);
-        }
-        // read page contents from disk and write to memory
+        return SwapInFromBuffer(p, read.virtualPage, p.getMapping(read.virtualPage), read.virtualPage - read.first);
+    }
+
+    /**
+     * Puts a small page read into {@code swapInBuffer} into memory.
+     * @param index Index of the page in the buffer.
+     * @return The page's new entry.
+     */
+    private long SwapInFromBuffer(PCB p, int virtualPage, long entry, int index) {
+        int freePage = GetFreePage();
+        System.arraycopy(swapInBuffer, index * Hardware.PAGE_SIZE, Hardware.getPhysicalMemory(), freePage * Hardware.PAGE_SIZE, Hardware.PAGE_SIZE);
+        entry = Page.present(entry, freePage) | Page.REFERENCED;
+        Occupy(p, virtualPage, entry);
+        memoryStats.pagesSwappedIn++;
+        return entry;
+    }
+
+    /**
+     * Reads a page mapped from a file into memory for the first time, or
+     * again after it was dropped to make room.
+     * @param p Process the page belongs to.
+     * @param virtualPage Virtual page address of the page.
+     * @param entry Entry of a mapped page not currently in memory.
+     * @return The page's new entry.
+     */
+    private long FileFaultIn(PCB p, int virtualPage, long entry) {
+        FileMapping mapping = p.getFileMapping(Page.mapping(entry));
+        int freePage = GetFreePage();
         int physicalAddress = freePage * Hardware.PAGE_SIZE;
-        vfs.Seek(pageFile, page.diskPage * Hardware.PAGE_SIZE);
-        byte[] data = vfs.Read(pageFile, Hardware.PAGE_SIZE);
-        for (int i = 0; i < data.length; i++)
-            Hardware.directWrite(physicalAddress + i, data[i]);
-        page.diskPage = -1;
-        page.physicalPage = freePage;
-        usedPages[freePage] = true;
+        byte[] memory = Hardware.getPhysicalMemory();
+        int read = vfs.ReadAt(mapping.file, mapping.fileOffset(virtualPage), memory, physicalAddress, mapping.fileBytes(virtualPage));
+        // past the end of the file, and past the mapping, reads as zeros
+        Arrays.fill(memory, physicalAddress + Math.max(read, 0), physicalAddress + Hardware.PAGE_SIZE, (byte) 0);
+        Hardware.clearDirty(freePage);
+        entry = Page.present(entry, freePage);
+        Occupy(p, virtualPage, entry);
+        return entry;
+    }
+
+    /**
+     * Writes the file backed part of a mapped page in memory back to its file.
+     * @param mapping The page's file mapping.
+     * @param virtualPage Virtual page address of the page.
+     * @param physicalPage Physical page address the page is in.
+     */
+    private void WriteBackFilePage(FileMapping mapping, int virtualPage, int physicalPage) {
+        int physicalAddress = physicalPage * Hardware.PAGE_SIZE;
+        byte[] data = Arrays.copyOfRange(Hardware.getPhysicalMemory(), physicalAddress, physicalAddress + mapping.fileBytes(virtualPage));
+        vfs.WriteAt(mapping.file, mapping.fileOffset(virtualPage), data);
+        Hardware.clearDirty(physicalPage);
+    }
+
+    /**
+     * Finds a free physical page. If memory is full, then borrow a page from
+     * another, or potentially, our own process. Zeroed pages are left for
+     * {@code GetZeroedPage} as long as there are others.
+     * @return The free physical page address.
+     */
+    private int GetFreePage() {
+        for (int i = 0; i < frameOwners.length; i++)
+            if (frameOwners[i] == -1 && zeroedPageIndices[i] == -1)
+                return i;
+        if (zeroedPageCount > 0)
+            return zeroedPages[zeroedPageCount - 1];
+        // if no free pages exist, borrow from another process
+        return SwapPhysicalPageOut(FindPageToSwapOut());
+    }
+
+    /**
+     * Finds a free physical page holding only zeros, from those zeroed ahead
+     * of time if there are any, and by zeroing one otherwise.
+     * @return The free physical page address.
+     */
+    private int GetZeroedPage() {
+        if (zeroedPageCount > 0) {
+            memoryStats.zeroedPoolHits++;
+            return zeroedPages[zeroedPageCount - 1];
+        }
+        int freePage = GetFreePage();
+        ZeroInline(freePage);
+        return freePage;
+    }
+
+    /**
+     * Zeroes a physical page about to be handed out, as none was zeroed
+     * ahead of time.
+     */
+    private void ZeroInline(int physicalPage) {
+        Arrays.fill(Hardware.getPhysicalMemory(), physicalPage * Hardware.PAGE_SIZE, (physicalPage + 1) * Hardware.PAGE_SIZE, (byte) 0);
+        memoryStats.inlineZeroings++;
+    }
+
+    /**
+     * Zeroes free physical pages ahead of time, until {@code pages} have been
+     * zeroed or {@code ZEROED_PAGES_TARGET} are ready. Called by the idle
+     * process, so pages are zeroed while there is nothing else to do.
+     * @return Number of physical pages zeroed.
+     */
+    private int ZeroFreePages(int pages) {
+        byte[] memory = Hardware.getPhysicalMemory();
+        int zeroed = 0;
+        for (int n = 0; n < frameOwners.length && zeroed < pages && zeroedPageCount < ZEROED_PAGES_TARGET; n++) {
+            int physicalPage = zeroingHand;
+            zeroingHand = (zeroingHand + 1) % frameOwners.length;
+            if (frameOwners[physicalPage] != -1 || zeroedPageIndices[physicalPage] != -1)
+                continue;
+            Arrays.fill(memory, physicalPage * Hardware.PAGE_SIZE, (physicalPage + 1) * Hardware.PAGE_SIZE, (byte) 0);
+            AddZeroedPage(physicalPage);
+            memoryStats.pagesPreZeroed++;
+            zeroed++;
+        }
+        return zeroed;
+    }
+
+    private void AddZeroedPage(int physicalPage) {
+        zeroedPageIndices[physicalPage] = zeroedPageCount;
+        zeroedPages[zeroedPageCount++] = physicalPage;
+    }
+
+    /**
+     * Takes a physical page out of the zeroed pages, if it is in them, as it
+     * is about to be used.
+     */
+    private void RemoveZeroedPage(int physicalPage) {
+        int index = zeroedPageIndices[physicalPage];
+        if (index == -1)
+            return;
+        int last = zeroedPages[--zeroedPageCount];
+        zeroedPages[index] = last;
+        zeroedPageIndices[last] = index;
+        zeroedPageIndices[physicalPage] = -1;
+    }
+
+    /**
+     * Swaps out the page occupying a physical page, looking up its owner in
+     * the frame table.
+     * @param physicalPage A physical page in use, not the zero page.
+     * @return The first physical page address that was freed.
+     */
+    private int SwapPhysicalPageOut(int physicalPage) {
+        if (frameOwners[physicalPage] == SHARED_FRAME)
+            return SwapSharedPageOut(physicalPage);
+        PCB owner = scheduler.GetProcess(frameOwners[physicalPage]);
+        int virtualPage = frameVirtualPages[physicalPage];
+        int head = Page.head(owner.getMapping(virtualPage), virtualPage);
+        return SwapPageOut(owner, head, owner.getMapping(head));
+    }
+
+    /**
+     * Takes a page currently stored in memory and swaps it out to disk. Pages
+     * mapped from a file are written back to their file if they have changed
+     * and otherwise simply dropped, as they can be read from the file again.
+     * <p>
+     * A small page of anonymous memory is compressed into the swap pool if it
+     * compresses well. Otherwise it is written out together with the
+     * neighbouring pages of its process that are in memory and haven't been
+     * referenced recently, up to {@code swapCluster} pages in all, into
+     * consecutive slots of the page file. Reading the page back in then
+     * brings its neighbours along.
+     * @param p Process the page belongs to.
+     * @param virtualPage Virtual page address of the page's entry.
+     * @param entry Entry of a page currently in memory.
+     * @return The first physical page address that was freed.
+     */
+    private int SwapPageOut(PCB p, int virtualPage, long entry) {
+        int freePage = Page.location(entry);
+        byte[] memory = Hardware.getPhysicalMemory();
+        if (Page.isFile(entry)) {
+            memoryStats.swapOuts++;
+            Vacate(entry);
+            if (Hardware.isDirty(freePage))
+                WriteBackFilePage(p.getFileMapping(Page.mapping(entry)), virtualPage, freePage);
+            p.setMapping(virtualPage, Page.dropped(entry));
+            return freePage;
+        }
+        if (Page.isLarge(entry)) {
+            // a large page is written out as a whole
+            memoryStats.swapOuts++;
+            memoryStats.swapWrites++;
+            int bytes = Page.pages(entry) * Hardware.PAGE_SIZE;
+            vfs.Seek(pageFile, pageFileOffset);
+            vfs.WriteFrom(pageFile, memory, freePage * Hardware.PAGE_SIZE, bytes);
+            Vacate(entry);
+            p.setMapping(virtualPage, Page.swapped(entry, pageFileOffset / Hardware.PAGE_SIZE));
+            pageFileOffset += bytes;
+            return freePage;
+        }
+        int first = virtualPage, last = virtualPage;
+        while (last - first + 1 < swapCluster && IsClusterable(p.getMapping(last + 1)))
+            last++;
+        while (last - first + 1 < swapCluster && IsClusterable(p.getMapping(first - 1)))
+            first--;
+        // each page goes to the swap pool if it compresses well, and to the
+        // next slot of the page file otherwise
+        int slot = pageFileOffset / Hardware.PAGE_SIZE;
+        int count = 0;
+        for (int i = first; i <= last; i++) {
+            long neighbour = p.getMapping(i);
+            if (CompressPageOut(p, i, neighbour))
+                continue;
+            System.arraycopy(memory, Page.location(neighbour) * Hardware.PAGE_SIZE, swapOutBuffer, count * Hardware.PAGE_SIZE, Hardware.PAGE_SIZE);
+            Vacate(neighbour);
+            p.setMapping(i, Page.swapped(neighbour, slot + count));
+            memoryStats.swapOuts++;
+            count++;
+        }
+        if (count > 0) {
+            memoryStats.swapWrites++;
+            vfs.Seek(pageFile, pageFileOffset);
+            vfs.WriteFrom(pageFile, swapOutBuffer, 0, count * Hardware.PAGE_SIZE);
+            pageFileOffset += count * Hardware.PAGE_SIZE;
+        }
+        MakeRoomInSwapPool();
+        return freePage;
     }
 
     /**
-     * Takes a page currently stored in memory and swaps it out to disk.
-     * @param page A page currently in memory.
-     * @return The physical page address that was freed.
+     * Swaps a shared frame out to the page file. Every page in it is pointed
+     * at the same slot, so it is written once, but each page gets a private
+     * copy when it is read back in.
+     * @param physicalPage A shared physical page.
+     * @return The physical page address, now free.
      */
-    private int SwapPageOut(Page page) {
-        byte[] toWrite = new byte[Hardware.PAGE_SIZE];
-        int physicalAddress = page.physicalPage * Hardware.PAGE_SIZE;
-        for (int i = 0; i < toWrite.length; i++)
-            toWrite[i] = Hardware.directRead(physicalAddress + i);
+    private int SwapSharedPageOut(int physicalPage) {
+        int slot = pageFileOffset / Hardware.PAGE_SIZE;
         vfs.Seek(pageFile, pageFileOffset);
-        vfs.Write(pageFile, toWrite);
-        int freePage = page.physicalPage;
-        page.diskPage = pageFileOffset / Hardware.PAGE_SIZE;
-        page.physicalPage = -1;
+        vfs.WriteFrom(pageFile, Hardware.getPhysicalMemory(), physicalPage * Hardware.PAGE_SIZE, Hardware.PAGE_SIZE);
         pageFileOffset += Hardware.PAGE_SIZE;
-        usedPages[freePage] = false;
-        return freePage;
+        memoryStats.swapOuts++;
+        memoryStats.swapWrites++;
+        for (int i = 0; i < sharedFrames.count(physicalPage); i++) {
+            PCB sharer = scheduler.GetProcess(sharedFrames.getPID(physicalPage, i));
+            int virtualPage = sharedFrames.getVirtualPage(physicalPage, i);
+            sharer.setMapping(virtualPage, Page.swapped(sharer.getMapping(virtualPage), slot));
+            sharer.addResidentPages(-1);
+        }
+        sharedFrames.clear(physicalPage);
+        frameOwners[physicalPage] = -1;
+        Hardware.invalidateTLB(physicalPage);
+        return physicalPage;
+    }
+
+    /**
+     * Compresses a small page of anonymous memory in memory into the swap
+     * pool, if it compresses well enough.
+     * @return Whether the page was moved to the pool.
+     */
+    private boolean CompressPageOut(PCB p, int virtualPage, long entry) {
+        int handle = swapPool.store(Hardware.getPhysicalMemory(), Page.location(entry) * Hardware.PAGE_SIZE, p.pid, virtualPage);
+        if (handle == -1) {
+            if (swapPool.getCapacity() > 0)
+                memoryStats.poolRejects++;
+            return false;
+        }
+        memoryStats.swapOuts++;
+        memoryStats.poolStores++;
+        memoryStats.poolCompressedBytes += swapPool.getCompressedSize(handle);
+        Vacate(entry);
+        p.setMapping(virtualPage, Page.compressed(entry, handle));
+        return true;
     }
 
-    private final Random random = new Random();
     /**
-     * Picks a random page currently in memory.
-     * @return The page.
+     * Moves the pages held longest in the swap pool on to the page file until
+     * the pool is within its capacity, up to {@code swapCluster} pages per
+     * write.
      */
-    private Page FindPageToSwapOut() {
-        PCB victim;
+    private void MakeRoomInSwapPool() {
+        while (swapPool.isOverCapacity()) {
+            int slot = pageFileOffset / Hardware.PAGE_SIZE;
+            int count = 0;
+            while (count < swapCluster && swapPool.isOverCapacity()) {
+                int handle = swapPool.oldest();
+                PCB owner = scheduler.GetProcess(swapPool.getOwner(handle));
+                int virtualPage = swapPool.getVirtualPage(handle);
+                swapPool.load(handle, swapOutBuffer, count * Hardware.PAGE_SIZE);
+                owner.setMapping(virtualPage, Page.swapped(owner.getMapping(virtualPage), slot + count));
+                memoryStats.poolEvictions++;
+                count++;
+            }
+            memoryStats.swapWrites++;
+            vfs.Seek(pageFile, pageFileOffset);
+            vfs.WriteFrom(pageFile, swapOutBuffer, 0, count * Hardware.PAGE_SIZE);
+            pageFileOffset += count * Hardware.PAGE_SIZE;
+        }
+    }
+
+    /**
+     * Whether a physical page is shared, or holds a small page of anonymous
+     * memory, the pages {@code MergePages} looks at.
+     */
+    private boolean IsMergeable(int physicalPage) {
+        if (frameOwners[physicalPage] == SHARED_FRAME)
+            return true;
+        if (frameOwners[physicalPage] < 0)
+            return false;
+        long entry = scheduler.GetProcess(frameOwners[physicalPage]).getMapping(frameVirtualPages[physicalPage]);
+        return !Page.isFile(entry) && !Page.isLarge(entry);
+    }
+
+    private static boolean IsSamePage(int physicalPage, int otherPhysicalPage) {
+        byte[] memory = Hardware.getPhysicalMemory();
+        int a = physicalPage * Hardware.PAGE_SIZE, b = otherPhysicalPage * Hardware.PAGE_SIZE;
+        return Arrays.equals(memory, a, a + Hardware.PAGE_SIZE, memory, b, b + Hardware.PAGE_SIZE);
+    }
+
+    /**
+     * Merges the page in {@code physicalPage} into the identical frame
+     * {@code target}, sharing it first if it isn't already, and frees
+     * {@code physicalPage}.
+     */
+    private void MergeInto(int target, int physicalPage) {
+        if (frameOwners[target] != SHARED_FRAME) {
+            PCB owner = scheduler.GetProcess(frameOwners[target]);
+            int virtualPage = frameVirtualPages[target];
+            owner.setMapping(virtualPage, Page.shared(owner.getMapping(virtualPage), target));
+            sharedFrames.add(target, owner.pid, virtualPage);
+            frameOwners[target] = SHARED_FRAME;
+            // drop the writable translation
+            Hardware.invalidateTLB(target);
+        }
+        PCB owner = scheduler.GetProcess(frameOwners[physicalPage]);
+        int virtualPage = frameVirtualPages[physicalPage];
+        long entry = owner.getMapping(virtualPage);
+        Vacate(entry);
+        owner.setMapping(virtualPage, Page.shared(entry, target));
+        owner.addResidentPages(1);
+        sharedFrames.add(target, owner.pid, virtualPage);
+        memoryStats.pagesMerged++;
+    }
+
+    /**
+     * Takes a page out of a shared frame. The last page left in the frame
+     * gets it to itself again.
+     */
+    private void RemoveSharer(int physicalPage, int pid, int virtualPage) {
+        sharedFrames.remove(physicalPage, pid, virtualPage);
+        scheduler.GetProcess(pid).addResidentPages(-1);
+        if (sharedFrames.count(physicalPage) > 1)
+            return;
+        PCB last = scheduler.GetProcess(sharedFrames.getPID(physicalPage, 0));
+        int lastPage = sharedFrames.getVirtualPage(physicalPage, 0);
+        last.setMapping(lastPage, Page.present(last.getMapping(lastPage), physicalPage));
+        sharedFrames.clear(physicalPage);
+        frameOwners[physicalPage] = last.pid;
+        frameVirtualPages[physicalPage] = lastPage;
+    }
+
+    /**
+     * Clears the referenced bits of the pages in a shared frame, for
+     * {@code FindPageToSwapOut}.
+     * @return Whether any of them was referenced.
+     */
+    private boolean ClearSharedReferenced(int physicalPage) {
+        boolean referenced = false;
+        for (int i = 0; i < sharedFrames.count(physicalPage); i++) {
+            PCB sharer = scheduler.GetProcess(sharedFrames.getPID(physicalPage, i));
+            int virtualPage = sharedFrames.getVirtualPage(physicalPage, i);
+            long entry = sharer.getMapping(virtualPage);
+            if (Page.isReferenced(entry)) {
+                referenced = true;
+                sharer.setMapping(virtualPage, entry & ~Page.REFERENCED);
+            }
+        }
+        if (referenced)
+            Hardware.invalidateTLB(physicalPage);
+        return referenced;
+    }
+
+    /**
+     * Whether {@code entry} is a small page of anonymous memory, in a frame
+     * of its own and not referenced since the clock hand last passed it.
+     */
+    private static boolean IsClusterable(long entry) {
+        return Page.isPresent(entry) && !Page.isShared(entry) && !Page.isFile(entry) && !Page.isLarge(entry) && !Page.isReferenced(entry);
+    }
+
+    /**
+     * Picks a physical page to swap out with the clock algorithm: the frame
+     * table is swept in order, and a page referenced since the hand last
+     * passed it gets a second chance, having its referenced bit cleared
+     * (and its translation dropped from the TLB, so the next access sets the
+     * bit again). A shared frame counts as referenced if any of its pages is.
+     * @return A physical page in use.
+     */
+    private int FindPageToSwapOut() {
         while (true) {
-            victim = scheduler.GetRandomProcess();
-            Page[] pageTable = victim.getPageTable();
-            Page page = pageTable[random.nextInt(pageTable.length)];
-            if (page == null || page.physicalPage == -1)
+            int physicalPage = clockHand;
+            clockHand = (clockHand + 1) % frameOwners.length;
+            if (frameOwners[physicalPage] == -1 || frameOwners[physicalPage] == ZERO_FRAME)
                 continue;
-            return page;
+            if (frameOwners[physicalPage] == SHARED_FRAME) {
+                if (!ClearSharedReferenced(physicalPage))
+                    return physicalPage;
+                continue;
+            }
+            PCB owner = scheduler.GetProcess(frameOwners[physicalPage]);
+            int virtualPage = frameVirtualPages[physicalPage];
+            int head = Page.head(owner.getMapping(virtualPage), virtualPage);
+            long entry = owner.getMapping(head);
+            // the hand passes a large page as a whole
+            if (Page.isLarge(entry))
+                clockHand = (Page.location(entry) + Hardware.LARGE_PAGE_PAGES) % frameOwners.length;
+            if (!Page.isReferenced(entry))
+                return physicalPage;
+            owner.setMapping(head, entry & ~Page.REFERENCED);
+            Hardware.invalidateTLB(Page.location(entry));
         }
     }
 
@@ -1,14 +1,35 @@
+import java.nio.ByteBuffer;
+
 public class KernelMessage {
 
+    /** Sender filter that matches messages from every process. */
+    public static final int ANY_SENDER = -1;
+    /** Type mask that matches messages of every type. */
+    public static final long ANY_TYPE = -1L;
+
     private int senderPID = -1;
     private final int targetPID;
     private final int type;
     private final byte[] data;
+    /** Channel this message was published to, {@code null} when it was sent
+     * directly to the target. */
+    private final String channel;
 
     public KernelMessage(int targetPID, int type, byte[] data) {
+        this(targetPID, type, data, null);
+    }
+
+    /**
+     * Instantiates a message published to a channel. The payload is shared
+     * with every other subscriber's message, so it is never handed out
+     * directly, see {@code getData()}.
+     * @param channel Name of the channel the message was published to.
+     */
+    public KernelMessage(int targetPID, int type, byte[] data, String channel) {
         this.targetPID = targetPID;
         this.type = type;
         this.data = data;
+        this.channel = channel;
     }
 
     /**
@@ -41,12 +62,61 @@ public class KernelMessage {
         return type;
     }
 
+    /**
+     * Returns the message payload. Channel messages share their payload with
+     * other subscribers, so a private copy is returned for them; use
+     * {@code getPayload()} to read it without copying.
+     */
     public byte[] getData() {
+        if (channel != null)
+            return data.clone();
         return data;
     }
 
+    /**
+     * Returns a read-only view of the message payload without copying it.
+     */
+    public ByteBuffer getPayload() {
+        return ByteBuffer.wrap(data).asReadOnlyBuffer();
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    /**
+     * Whether this message was published to a channel rather than sent
+     * directly to its target.
+     */
+    public boolean isPublished() {
+        return channel != null;
+    }
+
+    /**
+     * Returns the type mask that matches only messages of type {@code type}.
+     * Only types 0 through 63 can be selected by a mask; messages of any other
+     * type are only matched by {@code ANY_TYPE}.
+     */
+    public static long typeMask(int type) {
+        if (type < 0 || type >= Long.SIZE)
+            return 0;
+        return 1L << type;
+    }
+
+    /**
+     * Tests whether this message passes a receive filter.
+     * @param senderPID Sender to accept, or {@code ANY_SENDER}.
+     * @param typeMask Bit {@code n} set accepts messages of type {@code n}.
+     *                 {@code ANY_TYPE} accepts every type.
+     */
+    public boolean matches(int senderPID, long typeMask) {
+        if (senderPID != ANY_SENDER && senderPID != this.senderPID)
+            return false;
+        return typeMask == ANY_TYPE || (typeMask & typeMask(type)) != 0;
+    }
+
     @Override
     public String toString() {
-        return String.format("%s senderpid=%d,targetpid=%d,type=%d,msg=\"%s\"", super.toString(), senderPID, targetPID, type, new String(data));
+        return String.format("%s senderpid=%d,targetpid=%d,type=%d,channel=%s,msg=\"%s\"", super.toString(), senderPID, targetPID, type, channel, new String(data));
     }
 }
@@ -0,0 +1,73 @@
+import java.util.Random;
+
+/**
+ * Compares a 64 KB buffer made of small pages with one made of a single large
+ * page. Reports TLB misses while writing and randomly reading the buffer, and
+ * page faults while reading it back after other processes have pushed it out
+ * of memory.
+ */
+public class LargePageBenchmarkProcess extends UserlandProcess {
+
+    private static final int SIZE = Hardware.LARGE_PAGE_SIZE;
+    private static final int RANDOM_READS = 200_000;
+    /** Number of processes allocating memory to push the buffer out. */
+    private static final int HOGS = 20;
+
+    @Override
+    public void main() {
+        run(false);
+        run(true);
+    }
+
+    private void run(boolean largePages) {
+        Random random = new Random(1);
+        MemoryStats before = OS.GetMemoryStats();
+        int p = OS.AllocateMemory(SIZE, largePages);
+        if (p == -1)
+            throw new RuntimeException("Memory allocation failed");
+        for (int i = 0; i < SIZE; i++)
+            Hardware.Write(p + i, (byte) i);
+        for (int i = 0; i < RANDOM_READS; i++)
+            Hardware.Read(p + random.nextInt(SIZE));
+        MemoryStats access = OS.GetMemoryStats().since(before);
+
+        // let other processes take the memory, then read everything back
+        int[] hogs = new int[HOGS];
+        for (int i = 0; i < HOGS; i++)
+            hogs[i] = OS.CreateProcess(new Hog(OS.GetPID()));
+        for (int i = 0; i < HOGS; i++)
+            OS.WaitForMessage();
+        before = OS.GetMemoryStats();
+        for (int i = 0; i < SIZE; i++)
+            if (Hardware.Read(p + i) != (byte) i)
+                throw new RuntimeException("Memory doesn't match what was written");
+        MemoryStats reread = OS.GetMemoryStats().since(before);
+        OS.FreeMemory(p, SIZE);
+        for (int hog : hogs)
+            OS.SendMessage(new KernelMessage(hog, 0, new byte[0]));
+
+        println(String.format("%s pages: write+random read %d TLB misses, %d faults; read back after pressure %d TLB misses, %d faults",
+                largePages ? "large" : "small", access.tlbMisses, access.pageFaults, reread.tlbMisses, reread.pageFaults));
+    }
+
+    /**
+     * Allocates and touches memory, tells the benchmark, and holds on to the
+     * memory until the benchmark says to exit.
+     */
+    public static class Hog extends UserlandProcess {
+        private final int benchmarkPID;
+
+        public Hog(int benchmarkPID) {
+            this.benchmarkPID = benchmarkPID;
+        }
+
+        @Override
+        public void main() {
+            int p = OS.AllocateMemory(SIZE, false);
+            for (int i = 0; i < SIZE; i += Hardware.PAGE_SIZE)
+                Hardware.Write(p + i, (byte) 1);
+            OS.SendMessage(new KernelMessage(benchmarkPID, 0, new byte[0]));
+            OS.WaitForMessageFrom(benchmarkPID, -1);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Fixed-capacity ring buffer of {@code KernelMessage}s used as a process'
+ * message queue. Mailboxes are only ever touched from the kernel thread, so no
+ * locking is required and enqueuing a message never allocates.
+ */
+public class Mailbox {
+
+    /** Number of messages a mailbox holds when no capacity is specified. */
+    public static final int DEFAULT_CAPACITY = 16;
+
+    private final KernelMessage[] messages;
+    /** Index of the oldest message in {@code messages}. */
+    private int head = 0;
+    /** Number of messages currently stored. */
+    private int size = 0;
+
+    // statistics
+    /** Largest number of messages this mailbox has held at once. */
+    private int highWaterMark = 0;
+    /** Number of non-blocking sends rejected because the mailbox was full. */
+    private int dropCount = 0;
+    /** Number of senders that had to block because the mailbox was full. */
+    private int blockCount = 0;
+
+    public Mailbox() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity Maximum number of messages the mailbox can hold.
+     */
+    public Mailbox(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Mailbox capacity must be positive");
+        messages = new KernelMessage[capacity];
+    }
+
+    /**
+     * Adds (enqueues) a message to the end of the mailbox.
+     * @param msg Message to enqueue.
+     * @return {@code true} if the message was added, {@code false} if the
+     * mailbox is full.
+     */
+    public boolean offer(KernelMessage msg) {
+        if (size == messages.length)
+            return false;
+        messages[(head + size) % messages.length] = msg;
+        size++;
+        if (size > highWaterMark)
+            highWaterMark = size;
+        return true;
+    }
+
+    /**
+     * Removes (dequeues) the oldest message in the mailbox. Returns
+     * {@code null} if the mailbox is empty.
+     */
+    public KernelMessage poll() {
+        if (size == 0)
+            return null;
+        KernelMessage msg = messages[head];
+        messages[head] = null;
+        head = (head + 1) % messages.length;
+        size--;
+        return msg;
+    }
+
+    /**
+     * Removes the oldest message that passes the given filter, leaving the
+     * order of all other messages intact. Returns {@code null} if no message
+     * matches.
+     * @param senderPID Sender to accept, or {@code KernelMessage.ANY_SENDER}.
+     * @param typeMask Types to accept, see {@code KernelMessage.matches}.
+     */
+    public KernelMessage take(int senderPID, long typeMask) {
+        for (int i = 0; i < size; i++) {
+            int index = (head + i) % messages.length;
+            KernelMessage msg = messages[index];
+            if (!msg.matches(senderPID, typeMask))
+                continue;
+            // close the gap left behind by shifting newer messages back
+            for (int j = i; j < size - 1; j++)
+                messages[(head + j) % messages.length] = messages[(head + j + 1) % messages.length];
+            messages[(head + size - 1) % messages.length] = null;
+            size--;
+            return msg;
+        }
+        return null;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isFull() {
+        return size == messages.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return messages.length;
+    }
+
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    public int getDropCount() {
+        return dropCount;
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * Records a send that was rejected because this mailbox was full.
+     */
+    public void recordDrop() {
+        dropCount++;
+    }
+
+    /**
+     * Records a sender that blocked because this mailbox was full.
+     */
+    public void recordBlock() {
+        blockCount++;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("size=%d/%d,highwater=%d,dropped=%d,blocked=%d", size, messages.length, highWaterMark, dropCount, blockCount);
+    }
+}
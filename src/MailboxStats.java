@@ -0,0 +1,29 @@
+/**
+ * Snapshot of a process' mailbox statistics, see {@code OS.GetMailboxStats}.
+ * Counts are totals since the process started.
+ */
+public class MailboxStats {
+
+    /** Number of messages the mailbox holds at most, and currently. */
+    public final int capacity, size;
+    /** Largest number of messages the mailbox has held at once. */
+    public final int highWaterMark;
+    /** Non-blocking sends, and channel deliveries, rejected because the
+     * mailbox was full. */
+    public final int dropCount;
+    /** Senders that had to block because the mailbox was full. */
+    public final int blockCount;
+
+    public MailboxStats(Mailbox mailbox) {
+        capacity = mailbox.capacity();
+        size = mailbox.size();
+        highWaterMark = mailbox.getHighWaterMark();
+        dropCount = mailbox.getDropCount();
+        blockCount = mailbox.getBlockCount();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("size=%d/%d,highwater=%d,dropped=%d,blocked=%d", size, capacity, highWaterMark, dropCount, blockCount);
+    }
+}
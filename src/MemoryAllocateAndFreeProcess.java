@@ -48,6 +48,6 @@ public class MemoryAllocateAndFreeProcess extends UserlandProcess {
         OS.FreeMemory(ps[0], 1024);
         OS.FreeMemory(ps[1], 2048);
         OS.FreeMemory(ps[2], 4096);
-        System.out.println("Memory successfully allocated, checked, and freed!");
+        println("Memory successfully allocated, checked, and freed!");
     }
 }
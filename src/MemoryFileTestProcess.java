@@ -0,0 +1,38 @@
+import java.util.Random;
+
+public class MemoryFileTestProcess extends UserlandProcess {
+    @Override
+    public void main() {
+        Random random = new Random();
+        int size = 4 * 1024;
+
+        // fill memory with random data and write it straight to a file
+        int p = OS.AllocateMemory(size);
+        if (p == -1)
+            throw new RuntimeException("Memory allocation failed");
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        for (int i = 0; i < size; i++)
+            Hardware.Write(p + i, data[i]);
+        int fd = OS.Open("file memoryfile.bin");
+        if (OS.WriteFromMemory(fd, p, size) != size)
+            throw new RuntimeException("Write from memory failed");
+
+        // read the file straight back into a second allocation, starting part
+        // way into a page
+        int q = OS.AllocateMemory(size + 1024);
+        if (q == -1)
+            throw new RuntimeException("Memory allocation failed");
+        OS.Seek(fd, 0);
+        if (OS.ReadToMemory(fd, q + 100, size) != size)
+            throw new RuntimeException("Read to memory failed");
+        for (int i = 0; i < size; i++)
+            if (Hardware.Read(q + 100 + i) != data[i])
+                throw new RuntimeException("Memory doesn't match the file");
+
+        OS.Close(fd);
+        OS.FreeMemory(p, size);
+        OS.FreeMemory(q, size + 1024);
+        println("Memory successfully written to and read from a file!");
+    }
+}
@@ -0,0 +1,38 @@
+import java.util.Random;
+
+public class MemoryMapTestProcess extends UserlandProcess {
+    @Override
+    public void main() {
+        Random random = new Random();
+        int size = 3 * 1024 + 500;
+
+        // write a file, then map it and read it through memory
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        int fd = OS.Open("file mapped.bin");
+        OS.Write(fd, data);
+        int p = OS.MapFile(fd, 0, size);
+        if (p == -1)
+            throw new RuntimeException("Mapping the file failed");
+        // the mapping stays valid after its descriptor is closed
+        OS.Close(fd);
+        for (int i = 0; i < size; i++)
+            if (Hardware.Read(p + i) != data[i])
+                throw new RuntimeException("Mapped memory doesn't match the file");
+
+        // change the file through memory, then check the file after unmapping
+        for (int i = 0; i < size; i += 7) {
+            data[i]++;
+            Hardware.Write(p + i, data[i]);
+        }
+        if (!OS.UnmapFile(p, size))
+            throw new RuntimeException("Unmapping the file failed");
+        fd = OS.Open("file mapped.bin");
+        byte[] read = OS.ReadAt(fd, 0, size);
+        OS.Close(fd);
+        for (int i = 0; i < size; i++)
+            if (read[i] != data[i])
+                throw new RuntimeException("File doesn't contain changes made through memory");
+        println("File successfully mapped, changed and unmapped!");
+    }
+}
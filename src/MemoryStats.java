@@ -0,0 +1,251 @@
+/**
+ * Snapshot of the kernel's paging statistics, see {@code OS.GetMemoryStats}.
+ * All counts are totals since the machine started, so a workload is measured
+ * by the difference between a snapshot taken before and one taken after,
+ * except for the few marked as current values.
+ */
+public class MemoryStats {
+
+    /** Translations not found in the TLB. */
+    public long tlbMisses;
+    /** Accesses to pages not in memory, each reading the page from the page
+     * file or the file it is mapped from. */
+    public long pageFaults;
+    /** Pages written out (or dropped) to make room in memory. */
+    public long swapOuts;
+    /** Reads from the page file, each bringing in one or more pages. */
+    public long swapReads;
+    /** Writes to the page file, each writing out one or more pages. */
+    public long swapWrites;
+    /** Pages read from the page file ahead of being accessed, along with a
+     * neighbouring page that was. */
+    public long pagesReadAhead;
+    /** Pages brought back into memory from the page file or the swap pool,
+     * on a fault, read ahead, or prefaulted. */
+    public long pagesSwappedIn;
+    /** Pages of a process' working set swapped in before it runs, see
+     * {@code OS.SetPrefault}. */
+    public long pagesPrefaulted;
+    /** Pages compressed into the swap pool instead of written to the page
+     * file. */
+    public long poolStores;
+    /** Bytes the pages compressed into the swap pool took once compressed. */
+    public long poolCompressedBytes;
+    /** Pages that didn't compress well enough for the swap pool and went to
+     * the page file. */
+    public long poolRejects;
+    /** Pages moved from the swap pool on to the page file to make room. */
+    public long poolEvictions;
+    /** Page faults served from the swap pool, and the time they took. */
+    public long poolFaults, poolFaultNanos;
+    /** Page faults served from the page file, and the time they took. */
+    public long pageFileFaults, pageFileFaultNanos;
+    /** Page faults served from the page file on an I/O worker, while other
+     * processes ran, see {@code OS.SetNonBlockingFaults}. */
+    public long nonBlockingFaults;
+    /** Time the kernel spent reading from the page file on its own thread,
+     * during which no process could run. */
+    public long swapReadStallNanos;
+    /** Time spent running the idle process, having nothing else to run. */
+    public long idleNanos;
+    /** Large pages handed out by {@code AllocateMemory}. */
+    public long largePages;
+    /** Allocations that could have used large pages but didn't, because no
+     * aligned virtual region was free. */
+    public long largePageFallbacks;
+    /** Pages given a zeroed frame on their first write. */
+    public long zeroFills;
+    /** Physical pages looked at by {@code OS.MergePages}. */
+    public long pagesScanned;
+    /** Pages merged into a shared frame or the zero page. */
+    public long pagesMerged;
+    /** Writes to a merged page, giving it a copy of its own. */
+    public long copyOnWrites;
+    /** Current number of pages reading from the zero page. */
+    public long zeroPages;
+    /** Current number of frames shared by merged pages. */
+    public long sharedFrames;
+    /** Current number of frames freed by merging, pages in shared frames
+     * less the frames themselves. */
+    public long framesSavedByMerging;
+    /** Physical pages zeroed ahead of time by {@code OS.ZeroFreePages}. */
+    public long pagesPreZeroed;
+    /** Physical pages that had to start out zeroed and had been zeroed ahead
+     * of time. */
+    public long zeroedPoolHits;
+    /** Physical pages that had to start out zeroed and were zeroed on the
+     * spot, as none had been zeroed ahead of time. */
+    public long inlineZeroings;
+    /** Current number of free physical pages zeroed ahead of time. */
+    public long zeroedPoolDepth;
+    /** Processes suspended, and resumed, by load control. */
+    public long suspensions, resumptions;
+    /** Current number of processes suspended by load control. */
+    public long suspendedProcesses;
+    /** Page faults per second, machine wide, over the last load control
+     * period. A current value. */
+    public long pageFaultRate;
+
+    public MemoryStats() {}
+
+    public MemoryStats(MemoryStats other) {
+        tlbMisses = other.tlbMisses;
+        pageFaults = other.pageFaults;
+        swapOuts = other.swapOuts;
+        swapReads = other.swapReads;
+        swapWrites = other.swapWrites;
+        pagesReadAhead = other.pagesReadAhead;
+        pagesSwappedIn = other.pagesSwappedIn;
+        pagesPrefaulted = other.pagesPrefaulted;
+        poolStores = other.poolStores;
+        poolCompressedBytes = other.poolCompressedBytes;
+        poolRejects = other.poolRejects;
+        poolEvictions = other.poolEvictions;
+        poolFaults = other.poolFaults;
+        poolFaultNanos = other.poolFaultNanos;
+        pageFileFaults = other.pageFileFaults;
+        pageFileFaultNanos = other.pageFileFaultNanos;
+        nonBlockingFaults = other.nonBlockingFaults;
+        swapReadStallNanos = other.swapReadStallNanos;
+        idleNanos = other.idleNanos;
+        largePages = other.largePages;
+        largePageFallbacks = other.largePageFallbacks;
+        zeroFills = other.zeroFills;
+        pagesScanned = other.pagesScanned;
+        pagesMerged = other.pagesMerged;
+        copyOnWrites = other.copyOnWrites;
+        zeroPages = other.zeroPages;
+        sharedFrames = other.sharedFrames;
+        framesSavedByMerging = other.framesSavedByMerging;
+        pagesPreZeroed = other.pagesPreZeroed;
+        zeroedPoolHits = other.zeroedPoolHits;
+        inlineZeroings = other.inlineZeroings;
+        zeroedPoolDepth = other.zeroedPoolDepth;
+        suspensions = other.suspensions;
+        resumptions = other.resumptions;
+        suspendedProcesses = other.suspendedProcesses;
+        pageFaultRate = other.pageFaultRate;
+    }
+
+    /**
+     * Returns the counts accumulated between {@code before} and this
+     * snapshot. Current values are this snapshot's.
+     */
+    public MemoryStats since(MemoryStats before) {
+        MemoryStats delta = new MemoryStats();
+        delta.tlbMisses = tlbMisses - before.tlbMisses;
+        delta.pageFaults = pageFaults - before.pageFaults;
+        delta.swapOuts = swapOuts - before.swapOuts;
+        delta.swapReads = swapReads - before.swapReads;
+        delta.swapWrites = swapWrites - before.swapWrites;
+        delta.pagesReadAhead = pagesReadAhead - before.pagesReadAhead;
+        delta.pagesSwappedIn = pagesSwappedIn - before.pagesSwappedIn;
+        delta.pagesPrefaulted = pagesPrefaulted - before.pagesPrefaulted;
+        delta.poolStores = poolStores - before.poolStores;
+        delta.poolCompressedBytes = poolCompressedBytes - before.poolCompressedBytes;
+        delta.poolRejects = poolRejects - before.poolRejects;
+        delta.poolEvictions = poolEvictions - before.poolEvictions;
+        delta.poolFaults = poolFaults - before.poolFaults;
+        delta.poolFaultNanos = poolFaultNanos - before.poolFaultNanos;
+        delta.pageFileFaults = pageFileFaults - before.pageFileFaults;
+        delta.pageFileFaultNanos = pageFileFaultNanos - before.pageFileFaultNanos;
+        delta.nonBlockingFaults = nonBlockingFaults - before.nonBlockingFaults;
+        delta.swapReadStallNanos = swapReadStallNanos - before.swapReadStallNanos;
+        delta.idleNanos = idleNanos - before.idleNanos;
+        delta.largePages = largePages - before.largePages;
+        delta.largePageFallbacks = largePageFallbacks - before.largePageFallbacks;
+        delta.zeroFills = zeroFills - before.zeroFills;
+        delta.pagesScanned = pagesScanned - before.pagesScanned;
+        delta.pagesMerged = pagesMerged - before.pagesMerged;
+        delta.copyOnWrites = copyOnWrites - before.copyOnWrites;
+        delta.zeroPages = zeroPages;
+        delta.sharedFrames = sharedFrames;
+        delta.framesSavedByMerging = framesSavedByMerging;
+        delta.pagesPreZeroed = pagesPreZeroed - before.pagesPreZeroed;
+        delta.zeroedPoolHits = zeroedPoolHits - before.zeroedPoolHits;
+        delta.inlineZeroings = inlineZeroings - before.inlineZeroings;
+        delta.zeroedPoolDepth = zeroedPoolDepth;
+        delta.suspensions = suspensions - before.suspensions;
+        delta.resumptions = resumptions - before.resumptions;
+        delta.suspendedProcesses = suspendedProcesses;
+        delta.pageFaultRate = pageFaultRate;
+        return delta;
+    }
+
+    /**
+     * Size of the pages compressed into the swap pool divided by their size
+     * once compressed.
+     */
+    public double compressionRatio() {
+        return poolCompressedBytes == 0 ? 0 : (double) poolStores * Hardware.PAGE_SIZE / poolCompressedBytes;
+    }
+
+    /**
+     * Fraction of swap-ins served from the swap pool rather than the page
+     * file.
+     */
+    public double poolHitRate() {
+        long faults = poolFaults + pageFileFaults;
+        return faults == 0 ? 0 : (double) poolFaults / faults;
+    }
+
+    /**
+     * Average time taken by a page fault served from the swap pool, in
+     * microseconds.
+     */
+    public double poolFaultMicros() {
+        return poolFaults == 0 ? 0 : poolFaultNanos / 1e3 / poolFaults;
+    }
+
+    /**
+     * Average time taken by a page fault served from the page file, in
+     * microseconds.
+     */
+    public double pageFileFaultMicros() {
+        return pageFileFaults == 0 ? 0 : pageFileFaultNanos / 1e3 / pageFileFaults;
+    }
+
+    /**
+     * Fraction of {@code wallNanos}, the time between two snapshots, that
+     * processes other than the idle process could run: neither idle nor
+     * stalled on a page file read.
+     */
+    public double cpuUtilization(long wallNanos) {
+        return wallNanos == 0 ? 0 : 1 - (double) (idleNanos + swapReadStallNanos) / wallNanos;
+    }
+
+    /**
+     * Fraction of physical pages that had to start out zeroed and had been
+     * zeroed ahead of time.
+     */
+    public double zeroedPoolHitRate() {
+        long pages = zeroedPoolHits + inlineZeroings;
+        return pages == 0 ? 0 : (double) zeroedPoolHits / pages;
+    }
+
+    /**
+     * Current number of frames that pages don't take up thanks to the zero
+     * page and merging.
+     */
+    public long framesSaved() {
+        return zeroPages + framesSavedByMerging;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("tlbMisses=%d,pageFaults=%d,swapOuts=%d,swapReads=%d,swapWrites=%d,pagesReadAhead=%d,pagesSwappedIn=%d,pagesPrefaulted=%d,"
+                        + "poolStores=%d,poolRejects=%d,poolEvictions=%d,compressionRatio=%.2f,poolHitRate=%.2f,poolFaultMicros=%.1f,pageFileFaultMicros=%.1f,"
+                        + "nonBlockingFaults=%d,swapReadStallNanos=%d,idleNanos=%d,"
+                        + "largePages=%d,largePageFallbacks=%d,"
+                        + "zeroFills=%d,pagesScanned=%d,pagesMerged=%d,copyOnWrites=%d,zeroPages=%d,sharedFrames=%d,framesSaved=%d,"
+                        + "pagesPreZeroed=%d,zeroedPoolHits=%d,inlineZeroings=%d,zeroedPoolDepth=%d,"
+                        + "suspensions=%d,resumptions=%d,suspendedProcesses=%d,pageFaultRate=%d",
+                tlbMisses, pageFaults, swapOuts, swapReads, swapWrites, pagesReadAhead, pagesSwappedIn, pagesPrefaulted,
+                poolStores, poolRejects, poolEvictions, compressionRatio(), poolHitRate(), poolFaultMicros(), pageFileFaultMicros(),
+                nonBlockingFaults, swapReadStallNanos, idleNanos,
+                largePages, largePageFallbacks,
+                zeroFills, pagesScanned, pagesMerged, copyOnWrites, zeroPages, sharedFrames, framesSaved(),
+                pagesPreZeroed, zeroedPoolHits, inlineZeroings, zeroedPoolDepth,
+                suspensions, resumptions, suspendedProcesses, pageFaultRate);
+    }
+}
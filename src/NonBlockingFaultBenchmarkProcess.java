@@ -0,0 +1,37 @@
+/**
+ * Runs 20 {@code SweepProcess}es, which together want twice the machine's
+ * memory and keep swapping each other's pages to and from the page file,
+ * with non-blocking page faults off and then on. Reports CPU utilization, the
+ * share of the time processes could run rather than the machine being idle
+ * or stalled on a page file read, along with throughput and page faults.
+ */
+public class NonBlockingFaultBenchmarkProcess extends UserlandProcess {
+
+    private static final int PROCESSES = 20;
+    private static final int SWEEPS = 500;
+
+    @Override
+    public void main() {
+        OS.SetLoadControl(false);
+        // every page faulted in on its own
+        OS.SetSwapCluster(1);
+        for (boolean nonBlocking : new boolean[] {false, true}) {
+            OS.SetNonBlockingFaults(nonBlocking);
+            MemoryStats before = OS.GetMemoryStats();
+            long start = System.nanoTime();
+            for (int i = 0; i < PROCESSES; i++)
+                OS.CreateProcess(new SweepProcess(OS.GetPID(), SWEEPS));
+            for (int i = 0; i < PROCESSES; i++)
+                OS.WaitForMessage();
+            long time = System.nanoTime() - start;
+            MemoryStats run = OS.GetMemoryStats().since(before);
+            double kilobytes = (double) PROCESSES * SWEEPS * SweepProcess.SIZE / 1024;
+            println(String.format("non-blocking faults %-3s: CPU utilization %.4f (%.1f ms stalled, %.1f ms idle), %6.0f KB/s, %4d page faults (%d non-blocking, %.1f us each); %.1f s",
+                    nonBlocking ? "on" : "off", run.cpuUtilization(time), run.swapReadStallNanos / 1e6, run.idleNanos / 1e6,
+                    kilobytes / (time / 1e9), run.pageFileFaults, run.nonBlockingFaults, run.pageFileFaultMicros(), time / 1e9));
+        }
+        OS.SetNonBlockingFaults(true);
+        OS.SetSwapCluster(8);
+        OS.SetLoadControl(true);
+    }
+}
@@ -2,7 +2,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class OS {
-    private static Kernel ki; // The one and only one instance of the kernel.
+    private static volatile Kernel ki; // The one and only one instance of the kernel.
 
     public static List<Object> parameters = new ArrayList<>();
     public static Object retVal;
@@ -10,11 +10,19 @@ public class OS {
     public enum CallType {
         SwitchProcess,SendMessage, Open, Close, Read, Seek, Write, GetMapping,
         CreateProcess, Sleep, GetPID, AllocateMemory, FreeMemory, GetPIDByName,
-        WaitForMessage, Exit
+        WaitForMessage, Subscribe, Unsubscribe, Publish, SubmitBatch, ReadAsync,
+        WriteAsync, WaitForIO, ReadInto, ReadAt, WriteAt, ReadV, WriteV,
+        ReadToMemory, WriteFromMemory, MapFile, UnmapFile, GetMemoryStats,
+        SetSwapCluster, SetSwapPoolSize, MergePages, ZeroFreePages, SetLoadControl,
+        SetResidencyScheduling, SetPrefault, SetNonBlockingFaults, GetMailboxStats,
+        GetChannelStats, Exit
     }
     public static CallType currentCall;
 
     private static void startTheKernel() {
+        // init starts running while the kernel is still being constructed
+        while (ki == null)
+            Thread.onSpinWait();
         ki.start();
     }
 
@@ -41,9 +49,18 @@ public class OS {
 
     // For assignment 1, you can ignore the priority. We will use that in assignment 2
     public static int CreateProcess(UserlandProcess up, PriorityType priority) {
+        return CreateProcess(up, priority, Mailbox.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new process whose mailbox holds at most
+     * {@code mailboxCapacity} messages.
+     */
+    public static int CreateProcess(UserlandProcess up, PriorityType priority, int mailboxCapacity) {
         parameters.clear();
         parameters.add(up);
         parameters.add(priority);
+        parameters.add(mailboxCapacity);
         currentCall = CallType.CreateProcess;
         startTheKernel();
         return (int) retVal;
@@ -111,21 +128,322 @@ public class OS {
         return (int)retVal;
     }
 
+    /**
+     * Reads into part of {@code buffer} instead of allocating a new array.
+     * @return Number of bytes read.
+     */
+    public static int ReadInto(int id, byte[] buffer, int offset, int length) {
+        parameters.clear();
+        parameters.add(id);
+        parameters.add(buffer);
+        parameters.add(offset);
+        parameters.add(length);
+        currentCall = CallType.ReadInto;
+        startTheKernel();
+        return (int)retVal;
+    }
+
+    /**
+     * Reads {@code size} bytes starting at {@code position} in a single call,
+     * without moving the descriptor's position.
+     */
+    public static byte[] ReadAt(int id, int position, int size) {
+        byte[] buffer = new byte[size];
+        ReadAt(id, position, buffer, 0, size);
+        return buffer;
+    }
+
+    /**
+     * Reads into part of {@code buffer} starting at {@code position}, without
+     * moving the descriptor's position. Fails on pipes.
+     * @return Number of bytes read. -1 on failure.
+     */
+    public static int ReadAt(int id, int position, byte[] buffer, int offset, int length) {
+        parameters.clear();
+        parameters.add(id);
+        parameters.add(position);
+        parameters.add(buffer);
+        parameters.add(offset);
+        parameters.add(length);
+        currentCall = CallType.ReadAt;
+        startTheKernel();
+        return (int)retVal;
+    }
+
+    /**
+     * Writes starting at {@code position}, without moving the descriptor's
+     * position. Fails on pipes.
+     * @return Number of bytes written. -1 on failure.
+     */
+    public static int WriteAt(int id, int position, byte[] data) {
+        parameters.clear();
+        parameters.add(id);
+        parameters.add(position);
+        parameters.add(data);
+        currentCall = CallType.WriteAt;
+        startTheKernel();
+        return (int)retVal;
+    }
+
+    /**
+     * Scatter read, fills each buffer in turn in a single call.
+     * @return Total number of bytes read.
+     */
+    public static int ReadV(int id, byte[][] buffers) {
+        parameters.clear();
+        parameters.add(id);
+        parameters.add(buffers);
+        currentCall = CallType.ReadV;
+        startTheKernel();
+        return (int)retVal;
+    }
+
+    /**
+     * Gather write, writes each buffer in turn in a single call.
+     * @return Total number of bytes written.
+     */
+    public static int WriteV(int id, byte[][] buffers) {
+        parameters.clear();
+        parameters.add(id);
+        parameters.add(buffers);
+        currentCall = CallType.WriteV;
+        startTheKernel();
+        return (int)retVal;
+    }
+
+    /**
+     * Reads from a device straight into this process' memory, without going
+     * through a {@code byte[]} and {@code Hardware.Write}. Fails on pipes.
+     * @param address Virtual address to start filling at.
+     * @param length Number of bytes to read.
+     * @return Number of bytes read, -1 on failure. Stops early at the end of
+     * the device or the first unmapped page.
+     */
+    public static int ReadToMemory(int id, int address, int length) {
+        parameters.clear();
+        parameters.add(id);
+        parameters.add(address);
+        parameters.add(length);
+        currentCall = CallType.ReadToMemory;
+        startTheKernel();
+        return (int)retVal;
+    }
+
+    /**
+     * Writes to a device straight out of this process' memory, without going
+     * through {@code Hardware.Read} and a {@code byte[]}. Fails on pipes.
+     * @param address Virtual address to start writing from.
+     * @param length Number of bytes to write.
+     * @return Number of bytes written, -1 on failure. Stops early at the first
+     * unmapped page.
+     */
+    public static int WriteFromMemory(int id, int address, int length) {
+        parameters.clear();
+        parameters.add(id);
+        parameters.add(address);
+        parameters.add(length);
+        currentCall = CallType.WriteFromMemory;
+        startTheKernel();
+        return (int)retVal;
+    }
+
+    /**
+     * Starts a read that runs in the background while this process keeps
+     * running. The bytes read are collected with {@code WaitForIO}. Pipes
+     * cannot be read asynchronously.
+     * @return ID of the request, matched by {@code IOCompletion.getRequestID}.
+     * -1 on failure.
+     */
+    public static int ReadAsync(int id, int size) {
+        parameters.clear();
+        parameters.add(id);
+        parameters.add(size);
+        currentCall = CallType.ReadAsync;
+        startTheKernel();
+        return (int)retVal;
+    }
+
+    /**
+     * Starts a write that runs in the background while this process keeps
+     * running. {@code data} must not be modified until the write completes.
+     * The number of bytes written is collected with {@code WaitForIO}. Pipes
+     * cannot be written asynchronously.
+     * @return ID of the request, matched by {@code IOCompletion.getRequestID}.
+     * -1 on failure.
+     */
+    public static int WriteAsync(int id, byte[] data) {
+        parameters.clear();
+        parameters.add(id);
+        parameters.add(data);
+        currentCall = CallType.WriteAsync;
+        startTheKernel();
+        return (int)retVal;
+    }
+
+    /**
+     * Waits for the oldest asynchronous read or write of this process to
+     * complete.
+     * @param timeoutMs Maximum time to wait. 0 returns immediately and a
+     *                  negative value waits forever.
+     * @return The completion, or {@code null} if none completed in time.
+     */
+    public static IOCompletion WaitForIO(int timeoutMs) {
+        parameters.clear();
+        parameters.add(timeoutMs);
+        currentCall = CallType.WaitForIO;
+        startTheKernel();
+        return (IOCompletion)retVal;
+    }
+
+    /**
+     * Enters the kernel once to run every call queued on {@code ring}'s
+     * submission ring. Results are collected from its completion ring.
+     * @return Number of calls run. Less than the number queued if the
+     * completion ring filled up.
+     */
+    public static int SubmitBatch(SyscallRing ring) {
+        parameters.clear();
+        parameters.add(ring);
+        currentCall = CallType.SubmitBatch;
+        startTheKernel();
+        return (int)retVal;
+    }
+
     // Messages
     public static void SendMessage(KernelMessage km) {
+        SendMessage(km, true);
+    }
+
+    /**
+     * Sends a message to another process.
+     * @param km Message to send.
+     * @param block When the target's mailbox is full, wait for room if
+     *              {@code true}, otherwise drop the message.
+     * @return {@code true} if the message was delivered, {@code false} if it
+     * was dropped or the target does not exist.
+     */
+    public static boolean SendMessage(KernelMessage km, boolean block) {
         parameters.clear();
         parameters.add(km);
+        parameters.add(block);
         currentCall = CallType.SendMessage;
         startTheKernel();
+        return (boolean)retVal;
     }
 
     public static KernelMessage WaitForMessage() {
+        return WaitForMessageFrom(KernelMessage.ANY_SENDER, KernelMessage.ANY_TYPE, -1);
+    }
+
+    /**
+     * Waits for the oldest message whose type is selected by {@code typeMask}.
+     * @param typeMask Bit {@code n} set accepts messages of type {@code n}, see
+     *                 {@code KernelMessage.typeMask}. {@code
+     *                 KernelMessage.ANY_TYPE} accepts every type.
+     * @param timeoutMs Maximum time to wait. 0 returns immediately and a
+     *                  negative value waits forever.
+     * @return The message, or {@code null} if the timeout expired.
+     */
+    public static KernelMessage WaitForMessage(long typeMask, int timeoutMs) {
+        return WaitForMessageFrom(KernelMessage.ANY_SENDER, typeMask, timeoutMs);
+    }
+
+    /**
+     * Waits for the oldest message sent by process {@code senderPID}.
+     * @return The message, or {@code null} if the timeout expired.
+     */
+    public static KernelMessage WaitForMessageFrom(int senderPID, int timeoutMs) {
+        return WaitForMessageFrom(senderPID, KernelMessage.ANY_TYPE, timeoutMs);
+    }
+
+    /**
+     * Waits for the oldest message sent by process {@code senderPID} whose
+     * type is selected by {@code typeMask}. Messages that do not match stay
+     * queued in order.
+     * @param senderPID Sender to accept, or {@code KernelMessage.ANY_SENDER}.
+     * @param typeMask Types to accept, see {@code WaitForMessage(long, int)}.
+     * @param timeoutMs Maximum time to wait. 0 returns immediately and a
+     *                  negative value waits forever.
+     * @return The message, or {@code null} if the timeout expired.
+     */
+    public static KernelMessage WaitForMessageFrom(int senderPID, long typeMask, int timeoutMs) {
         parameters.clear();
+        parameters.add(senderPID);
+        parameters.add(typeMask);
+        parameters.add(timeoutMs);
         currentCall = CallType.WaitForMessage;
         startTheKernel();
         return (KernelMessage)retVal;
     }
 
+    /**
+     * Subscribes to a named channel. Messages published to the channel arrive
+     * in this process' mailbox like any other message, see
+     * {@code KernelMessage.isPublished()}.
+     * @return {@code false} if already subscribed.
+     */
+    public static boolean Subscribe(String channel) {
+        parameters.clear();
+        parameters.add(channel);
+        currentCall = CallType.Subscribe;
+        startTheKernel();
+        return (boolean)retVal;
+    }
+
+    /**
+     * Unsubscribes from a named channel.
+     * @return {@code false} if not subscribed.
+     */
+    public static boolean Unsubscribe(String channel) {
+        parameters.clear();
+        parameters.add(channel);
+        currentCall = CallType.Unsubscribe;
+        startTheKernel();
+        return (boolean)retVal;
+    }
+
+    /**
+     * Publishes a message to every subscriber of a named channel. The payload
+     * is copied once and shared by all subscribers. Subscribers whose mailbox
+     * is full miss the message.
+     * @return Number of subscribers the message was delivered to.
+     */
+    public static int Publish(String channel, int type, byte[] data) {
+        parameters.clear();
+        parameters.add(channel);
+        parameters.add(type);
+        parameters.add(data);
+        currentCall = CallType.Publish;
+        startTheKernel();
+        return (int)retVal;
+    }
+
+    /**
+     * Returns a snapshot of a process' mailbox statistics: its high-water
+     * mark, and the sends it dropped or made wait because it was full.
+     * @return {@code null} if there is no such process.
+     */
+    public static MailboxStats GetMailboxStats(int pid) {
+        parameters.clear();
+        parameters.add(pid);
+        currentCall = CallType.GetMailboxStats;
+        startTheKernel();
+        return (MailboxStats)retVal;
+    }
+
+    /**
+     * Returns a snapshot of a named channel's statistics, including the
+     * deliveries dropped because a subscriber's mailbox was full.
+     * @return {@code null} if there is no such channel.
+     */
+    public static ChannelStats GetChannelStats(String channel) {
+        parameters.clear();
+        parameters.add(channel);
+        currentCall = CallType.GetChannelStats;
+        startTheKernel();
+        return (ChannelStats)retVal;
+    }
+
     public static int GetPidByName(String name) {
         parameters.clear();
         parameters.add(name);
@@ -135,16 +453,34 @@ public class OS {
     }
 
     // Memory
-    public static void GetMapping(int virtualPage) {
+    /**
+     * Loads the translation of a virtual page into the TLB, bringing the page
+     * into memory first if it isn't. The caller may be put into a waiting
+     * state while the page is read, after which it should look again.
+     * @return {@code true} if the page is mapped, {@code false} if it isn't.
+     */
+    public static boolean GetMapping(int virtualPage, boolean write) {
         parameters.clear();
         parameters.add(virtualPage);
+        parameters.add(write);
         currentCall = CallType.GetMapping;
         startTheKernel();
+        return (boolean) retVal;
     }
 
     public static int AllocateMemory(int size) {
+        return AllocateMemory(size, true);
+    }
+
+    /**
+     * Allocates memory, using large pages for as much of it as possible only
+     * if {@code largePages} is set. Allocations of at least
+     * {@code Hardware.LARGE_PAGE_SIZE} otherwise use large pages by default.
+     */
+    public static int AllocateMemory(int size, boolean largePages) {
         parameters.clear();
         parameters.add(size);
+        parameters.add(largePages);
         currentCall = CallType.AllocateMemory;
         startTheKernel();
         return (int)retVal;
@@ -158,4 +494,157 @@ public class OS {
         startTheKernel();
         return (boolean)retVal;
     }
+
+    /**
+     * Returns a snapshot of the kernel's paging statistics.
+     */
+    public static MemoryStats GetMemoryStats() {
+        parameters.clear();
+        currentCall = CallType.GetMemoryStats;
+        startTheKernel();
+        return (MemoryStats)retVal;
+    }
+
+    /**
+     * Sets how many pages the kernel moves to or from the page file in one
+     * operation: neighbouring pages swapped out together, and pages read
+     * ahead of a fault. 1 swaps every page on its own.
+     */
+    public static void SetSwapCluster(int pages) {
+        parameters.clear();
+        parameters.add(pages);
+        currentCall = CallType.SetSwapCluster;
+        startTheKernel();
+    }
+
+    /**
+     * Sets how many bytes of compressed pages the kernel's swap pool holds
+     * before moving pages on to the page file. 0 turns the pool off.
+     */
+    public static void SetSwapPoolSize(int bytes) {
+        parameters.clear();
+        parameters.add(bytes);
+        currentCall = CallType.SetSwapPoolSize;
+        startTheKernel();
+    }
+
+    /**
+     * Scans the next {@code pages} pages of physical memory for identical
+     * pages of anonymous memory, in any process, and merges them into a
+     * single copy shared read-only until one of them is written to. Meant to
+     * be called periodically by a background process, see
+     * {@code PageMergingProcess}.
+     * @param pages Number of physical pages to look at. A page is only merged
+     *              once it has stayed unchanged for a full pass over memory.
+     * @return Number of physical pages freed.
+     */
+    public static int MergePages(int pages) {
+        parameters.clear();
+        parameters.add(pages);
+        currentCall = CallType.MergePages;
+        startTheKernel();
+        return (int)retVal;
+    }
+
+    /**
+     * Zeroes free physical pages ahead of time, so memory that must start
+     * out zeroed can be handed out without waiting for it. Stops once enough
+     * pages are ready. Called by {@code IdleProcess}.
+     * @param pages Most physical pages to zero.
+     * @return Number of physical pages zeroed.
+     */
+    public static int ZeroFreePages(int pages) {
+        parameters.clear();
+        parameters.add(pages);
+        currentCall = CallType.ZeroFreePages;
+        startTheKernel();
+        return (int)retVal;
+    }
+
+    /**
+     * Turns load control on or off. With it on, which it is by default, the
+     * kernel suspends processes while memory is so overcommitted that every
+     * process keeps faulting, resuming them once their pages fit again.
+     * Turning it off resumes every suspended process.
+     */
+    public static void SetLoadControl(boolean enabled) {
+        parameters.clear();
+        parameters.add(enabled);
+        currentCall = CallType.SetLoadControl;
+        startTheKernel();
+    }
+
+    /**
+     * Turns residency scheduling on or off. With it on, which it is by
+     * default, the scheduler picks processes with most of their pages in
+     * memory ahead of those mostly swapped out, and so waiting on swap-ins,
+     * of the same priority. Processes passed over age, so none starves.
+     */
+    public static void SetResidencyScheduling(boolean enabled) {
+        parameters.clear();
+        parameters.add(enabled);
+        currentCall = CallType.SetResidencyScheduling;
+        startTheKernel();
+    }
+
+    /**
+     * Turns prefaulting on or off, off by default. With it on, the pages a
+     * process accessed over the last period it ran in are swapped back in
+     * before it runs, rather than faulted in one at a time.
+     */
+    public static void SetPrefault(boolean enabled) {
+        parameters.clear();
+        parameters.add(enabled);
+        currentCall = CallType.SetPrefault;
+        startTheKernel();
+    }
+
+    /**
+     * Turns non-blocking page faults on or off. With them on, which they are
+     * by default, a process that faults on a page in the page file waits
+     * while the page is read on a kernel I/O worker, and other processes run
+     * meanwhile. With them off, the kernel reads the page itself, and nothing
+     * runs until it has. It still does for large pages, and when a few reads
+     * are already in flight.
+     */
+    public static void SetNonBlockingFaults(boolean enabled) {
+        parameters.clear();
+        parameters.add(enabled);
+        currentCall = CallType.SetNonBlockingFaults;
+        startTheKernel();
+    }
+
+    /**
+     * Maps part of a file into this process' memory. Pages are read from the
+     * file as they are first accessed, and changes are written back to the
+     * file when unmapped.
+     * @param id Descriptor of the file, may be closed while mapped.
+     * @param offset Offset into the file to start at, a multiple of the page
+     *               size.
+     * @param length Number of bytes to map.
+     * @return Virtual address of the mapping. -1 on failure.
+     */
+    public static int MapFile(int id, int offset, int length) {
+        parameters.clear();
+        parameters.add(id);
+        parameters.add(offset);
+        parameters.add(length);
+        currentCall = CallType.MapFile;
+        startTheKernel();
+        return (int)retVal;
+    }
+
+    /**
+     * Removes a mapping created by {@code MapFile}, writing any changes back to
+     * the file.
+     * @return {@code false} if the range is not entirely mapped from a file.
+     */
+    public static boolean UnmapFile(int address, int length) {
+        parameters.clear();
+        parameters.add(address);
+        parameters.add(length);
+        currentCall = CallType.UnmapFile;
+        startTheKernel();
+        return (boolean)retVal;
+    }
 }
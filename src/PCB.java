@@ -1,4 +1,5 @@
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * Process control block. Contains information about this process used by the
@@ -14,20 +15,79 @@ public class PCB {
     /** When the OS should wake up this process if it was put to sleep */
     private long wakeTime = 0;
     private int timeoutCounter = 0;
-    public final int[] descriptors = {-1,-1,-1,-1};
-    private final LinkedList<KernelMessage> messageQueue = new LinkedList<>();
-    /** Contains mapping information for this process' virtual pages. Indices
-     * are the virtual page addresses for this process and values contain either
-     * a physical (memory) page address or disk page address. */
-    private final Page[] pageTable = new Page[100];
+    /** VFS ids of the devices this process has open, by descriptor. */
+    private final HandleTable<Integer> descriptors = new HandleTable<>(4);
+    private final Mailbox mailbox;
+    /** Message this process is trying to send while blocked on a full
+     * mailbox. {@code null} when the process is not blocked sending. */
+    private KernelMessage pendingMessage = null;
+    /** System call this process is waiting on. {@code null} when the process
+     * is not waiting on one. */
+    private PendingCall pendingCall = null;
+    /** Completed asynchronous reads and writes not yet collected. Filled by
+     * kernel I/O workers. */
+    private final ConcurrentLinkedQueue<IOCompletion> ioCompletions = new ConcurrentLinkedQueue<>();
+    /** Whether this process is blocked waiting for a message. */
+    private boolean awaitingMessage = false;
+    /** Sender this process is waiting for a message from. */
+    private int messageSenderFilter = KernelMessage.ANY_SENDER;
+    /** Message types this process is waiting for. */
+    private long messageTypeMask = KernelMessage.ANY_TYPE;
+    /** Message that woke this process from waiting for one, handed to it
+     * directly rather than through its mailbox. */
+    private KernelMessage handedMessage;
+    /** Contains mapping information for this process' virtual pages, a page
+     * table entry (see {@code Page}) for each mapped virtual page address. */
+    private final PageTable pageTable = new PageTable();
+    /** Unmapped regions of this process' virtual address space. */
+    private final FreeRegions freeRegions = new FreeRegions(PageTable.PAGES);
+    /** Files mapped into this process' memory, see {@code OS.MapFile}. */
+    private final HandleTable<FileMapping> fileMappings = new HandleTable<>(4);
+    /** Number of this process' pages in memory, and swapped out, to the page
+     * file or the swap pool. */
+    private int residentPages = 0;
+    private int swappedPages = 0;
+    /** Page faults this process has taken, in all and since its working set
+     * was last sampled. */
+    private long pageFaults = 0;
+    private int recentPageFaults = 0;
+    /** Virtual pages marked {@code Page.ACCESSED} since the working set was
+     * last sampled. */
+    private int[] accessedPages = new int[16];
+    private int accessedPageCount = 0;
+    /** Virtual pages accessed over the last sampling period the process ran
+     * in, some of which may have been unmapped since. */
+    private int[] workingSetPages = new int[16];
+    private int workingSetPageCount = 0;
+    /** Number of pages accessed over the last sampling period the process
+     * ran in, and page faults per second over the last sampling period. */
+    private int workingSet = 0;
+    private double pageFaultRate = 0;
+    /** Whether the kernel's load control has suspended this process, see
+     * {@code Scheduler.Suspend}, and the working set it had then. */
+    private boolean suspended = false;
+    private int suspendedWorkingSet = 0;
+    /** Times another process behind this one in its queue was picked to run
+     * first, see {@code Scheduler.Dequeue}. */
+    private int timesPassedOver = 0;
 
     PCB(UserlandProcess up, OS.PriorityType priority) {
+        this(up, priority, Mailbox.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param up The process this PCB is for.
+     * @param priority The process' initial priority.
+     * @param mailboxCapacity Maximum number of messages the process' mailbox
+     *                        can hold.
+     */
+    PCB(UserlandProcess up, OS.PriorityType priority, int mailboxCapacity) {
         process = up;
+        mailbox = new Mailbox(mailboxCapacity);
         name = up.getClass().getSimpleName();
         this.priority = priority;
         pid = nextPid;
         nextPid++;
-//        Arrays.fill(pageTable, -1);
     }
 
     public String getName() {
@@ -88,102 +148,384 @@ public class PCB {
     }
 
     /**
-     * Removes (dequeues) a {@code KernelMessage} from the process' message
-     * queue. Returns {@code null} if the queue is empty.
+     * Removes (dequeues) a {@code KernelMessage} from the process' mailbox.
+     * Returns {@code null} if the mailbox is empty.
      */
     public KernelMessage readMessage() {
-        return messageQueue.poll();
+        return mailbox.poll();
     }
 
     /**
-     * Adds (enqueues) a {@code KernelMessage} to the process' message queue.
+     * Removes (dequeues) the oldest {@code KernelMessage} in the process'
+     * mailbox that passes the given filter. Returns {@code null} if no message
+     * matches.
+     * @param senderPID Sender to accept, or {@code KernelMessage.ANY_SENDER}.
+     * @param typeMask Types to accept, see {@code KernelMessage.matches}.
+     */
+    public KernelMessage readMessage(int senderPID, long typeMask) {
+        return mailbox.take(senderPID, typeMask);
+    }
+
+    /**
+     * Adds (enqueues) a {@code KernelMessage} to the process' mailbox.
      * @param msg message to enqueue
+     * @return {@code false} if the mailbox is full and the message was not
+     * delivered.
      */
-    public void deliverMessage(KernelMessage msg) {
-        messageQueue.add(msg);
+    public boolean deliverMessage(KernelMessage msg) {
+        return mailbox.offer(msg);
     }
 
     /**
-     * Given a virtual page number, returns its mapping information.
-     * Returns {@code null} on failure.
-     * @param virtualPage Virtual page address to find.
-     * @return Mapping information associated with {@code virtualPage}.
-     */
-    public Page getMapping(int virtualPage) {
-        if (virtualPage < 0 || virtualPage >= pageTable.length)
-            return null;
-        return pageTable[virtualPage];
-    }
-
-    /**
-     * Finds an empty region in the page table of length {@code size}, returning
-     * the index of the first empty page and -1 if one cannot be found.
-     * @param size Size of the allocation to look for, in number of pages.
-     * @return Starting index of the empty region.
-     */
-    private int findEmptyVirtualPageRegion(int size) {
-        for (int i = 0; i <= pageTable.length - size; i++) {
-            boolean found = true;
-            for (int j = 0; j < size; j++)
-                if (pageTable[i + j] != null) {
-                    found = false;
-                    break;
-                }
-            if (found)
-                return i;
+     * Hands the message this process is waiting for to it directly, bypassing
+     * its mailbox, which may be full of messages it isn't waiting for. It is
+     * returned by the next {@code readAwaitedMessage}.
+     */
+    public void handMessage(KernelMessage msg) {
+        handedMessage = msg;
+    }
+
+    public Mailbox getMailbox() {
+        return mailbox;
+    }
+
+    public KernelMessage getPendingMessage() {
+        return pendingMessage;
+    }
+
+    public void setPendingMessage(KernelMessage msg) {
+        pendingMessage = msg;
+    }
+
+    public PendingCall getPendingCall() {
+        return pendingCall;
+    }
+
+    public void setPendingCall(PendingCall call) {
+        pendingCall = call;
+    }
+
+    /**
+     * Adds a completed asynchronous request to this process' completion
+     * queue. Safe to call from any thread.
+     */
+    public void completeIO(IOCompletion completion) {
+        ioCompletions.add(completion);
+    }
+
+    /**
+     * Removes the oldest completed asynchronous request. Returns {@code null}
+     * if there are none.
+     */
+    public IOCompletion pollIOCompletion() {
+        return ioCompletions.poll();
+    }
+
+    public boolean isAwaitingMessage() {
+        return awaitingMessage;
+    }
+
+    /**
+     * Marks this process as waiting for a message that passes the given
+     * filter.
+     * @param senderPID Sender to accept, or {@code KernelMessage.ANY_SENDER}.
+     * @param typeMask Types to accept, see {@code KernelMessage.matches}.
+     */
+    public void awaitMessage(int senderPID, long typeMask) {
+        awaitingMessage = true;
+        messageSenderFilter = senderPID;
+        messageTypeMask = typeMask;
+    }
+
+    /**
+     * Clears this process' waiting for a message state.
+     */
+    public void stopAwaitingMessage() {
+        awaitingMessage = false;
+        messageSenderFilter = KernelMessage.ANY_SENDER;
+        messageTypeMask = KernelMessage.ANY_TYPE;
+    }
+
+    /**
+     * Tests whether {@code msg} would wake this process from waiting for a
+     * message.
+     */
+    public boolean isAwaitedMessage(KernelMessage msg) {
+        return awaitingMessage && msg.matches(messageSenderFilter, messageTypeMask);
+    }
+
+    /**
+     * Removes (dequeues) the message handed to this process, if any, or
+     * otherwise the oldest message that passes the filter this process is
+     * waiting with. Returns {@code null} if no message matches.
+     */
+    public KernelMessage readAwaitedMessage() {
+        KernelMessage msg = handedMessage;
+        if (msg != null) {
+            handedMessage = null;
+            return msg;
         }
-        return -1;
+        return mailbox.take(messageSenderFilter, messageTypeMask);
     }
 
     /**
-     * Finds and creates a new page table mapping, returning the virtual address
-     * that starts the allocation. If a mapping cannot be made (i.e. a
-     * contiguous virtual mapping cannot be made), -1 is returned.
-     * @param pages Array containing virtual address mappings. These mappings
-     *              are provided by the operating system.
-     * @return The virtual address of the start of the allocation.
+     * Given a virtual page number, returns its page table entry (see
+     * {@code Page}). Returns 0 if the page is not mapped.
+     * @param virtualPage Virtual page address to find.
+     * @return Page table entry of {@code virtualPage}.
      */
-    public int allocateMemory(Page[] pages) {
-        int start = findEmptyVirtualPageRegion(pages.length);
-        if (start == -1)
-            return -1;
-        for (int i = 0; i < pages.length; i++)
-            pageTable[start + i] = pages[i];
-        return start * Hardware.PAGE_SIZE;
+    public long getMapping(int virtualPage) {
+        return pageTable.get(virtualPage);
+    }
+
+    /**
+     * Sets the page table entry of a virtual page, allocated by
+     * {@code allocateMemory}.
+     */
+    public void setMapping(int virtualPage, long entry) {
+        swappedPages += swappedPages(entry) - swappedPages(pageTable.get(virtualPage));
+        pageTable.set(virtualPage, entry);
+    }
+
+    private static int swappedPages(long entry) {
+        return Page.isSwapped(entry) || Page.isCompressed(entry) ? Page.pages(entry) : 0;
+    }
+
+    /**
+     * Whether {@code allocateMemory} would find room for {@code size} pages
+     * starting at a multiple of {@code alignment}.
+     */
+    public boolean hasEmptyVirtualPageRegion(int size, int alignment) {
+        return freeRegions.find(size, alignment) != -1;
+    }
+
+    /**
+     * Reserves a contiguous region of virtual pages, starting at a multiple of
+     * {@code alignment} (as needed for large pages). The operating system then
+     * fills in each page's entry with {@code setMapping}. If the region cannot
+     * be found, -1 is returned.
+     * @param pages Number of pages to reserve.
+     * @return The virtual page address the region starts at.
+     */
+    public int allocateMemory(int pages, int alignment) {
+        return freeRegions.allocate(pages, alignment);
     }
 
     /**
      * Deletes mappings from the page table.
      * @param virtualPage Virtual page address to start at.
      * @param size Number of pages to delete.
-     * @return Array containing the mappings that were deleted.
      */
-    public Page[] freeMemory(int virtualPage, int size) {
-        Page[] freedPages = new Page[size];
+    public void freeMemory(int virtualPage, int size) {
+        int run = 0;
         for (int i = 0; i < size; i++) {
-            freedPages[i] = pageTable[virtualPage + i];
-            pageTable[virtualPage + i] = null;
+            long entry = pageTable.get(virtualPage + i);
+            boolean mapped = entry != 0;
+            swappedPages -= swappedPages(entry);
+            pageTable.set(virtualPage + i, 0);
+            // hand each run of pages that were mapped back to the index
+            if (mapped)
+                run++;
+            else if (run > 0) {
+                freeRegions.free(virtualPage + i - run, run);
+                run = 0;
+            }
         }
-        return freedPages;
+        if (run > 0)
+            freeRegions.free(virtualPage + size - run, run);
     }
 
     /**
      * Deletes all mappings from the page table.
-     * @return Array containing the mappings that were deleted.
      */
-    public Page[] freeAllMemory() {
-        Page[] freedPages = new Page[pageTable.length];
-        int next = 0;
-        for (int i = 0; i < pageTable.length; i++) {
-            if (pageTable[i] == null)
+    public void freeAllMemory() {
+        pageTable.clear();
+        freeRegions.clear();
+        swappedPages = 0;
+    }
+
+    public int getResidentPages() {
+        return residentPages;
+    }
+
+    /**
+     * Adjusts the number of this process' pages in memory, as the kernel moves
+     * them in and out.
+     */
+    public void addResidentPages(int pages) {
+        residentPages += pages;
+    }
+
+    public int getSwappedPages() {
+        return swappedPages;
+    }
+
+    /**
+     * Fraction of this process' pages that are in memory rather than swapped
+     * out, 1 if none are either.
+     */
+    public double getResidentFraction() {
+        int pages = residentPages + swappedPages;
+        return pages == 0 ? 1 : (double) residentPages / pages;
+    }
+
+    public void recordPageFault() {
+        pageFaults++;
+        recentPageFaults++;
+    }
+
+    public long getPageFaults() {
+        return pageFaults;
+    }
+
+    /**
+     * Records that a page was marked {@code Page.ACCESSED}, so the mark is
+     * cleared and counted at the next sample.
+     */
+    public void recordAccess(int virtualPage) {
+        if (accessedPageCount == accessedPages.length)
+            accessedPages = Arrays.copyOf(accessedPages, accessedPageCount * 2);
+        accessedPages[accessedPageCount++] = virtualPage;
+    }
+
+    /**
+     * Measures the working set, the pages accessed since the last sample, and
+     * the rate of page faults, and starts a new sampling period. A process
+     * that accessed no pages, having not run, keeps the working set it had.
+     * @param seconds Length of the sampling period.
+     */
+    public void sampleWorkingSet(double seconds) {
+        int pages = 0;
+        for (int i = 0; i < accessedPageCount; i++) {
+            int virtualPage = accessedPages[i];
+            long entry = pageTable.get(virtualPage);
+            // the page may have been unmapped since
+            if (!Page.isAccessed(entry))
                 continue;
-            freedPages[next++] = pageTable[i];
-            pageTable[i] = null;
+            pageTable.set(virtualPage, entry & ~Page.ACCESSED);
+            pages += Page.pages(entry);
+        }
+        if (accessedPageCount > 0) {
+            workingSet = pages;
+            int[] previous = workingSetPages;
+            workingSetPages = accessedPages;
+            workingSetPageCount = accessedPageCount;
+            accessedPages = previous;
+        }
+        accessedPageCount = 0;
+        pageFaultRate = recentPageFaults / seconds;
+        recentPageFaults = 0;
+    }
+
+    public int getWorkingSet() {
+        return workingSet;
+    }
+
+    /**
+     * Virtual pages accessed over the last sampling period the process ran
+     * in, the first {@code getWorkingSetPageCount()} entries of the array.
+     */
+    public int[] getWorkingSetPages() {
+        return workingSetPages;
+    }
+
+    public int getWorkingSetPageCount() {
+        return workingSetPageCount;
+    }
+
+    public double getPageFaultRate() {
+        return pageFaultRate;
+    }
+
+    public boolean isSuspended() {
+        return suspended;
+    }
+
+    public void setSuspended(boolean suspended) {
+        this.suspended = suspended;
+    }
+
+    public int getSuspendedWorkingSet() {
+        return suspendedWorkingSet;
+    }
+
+    public void setSuspendedWorkingSet(int pages) {
+        suspendedWorkingSet = pages;
+    }
+
+    public int getTimesPassedOver() {
+        return timesPassedOver;
+    }
+
+    public void incrementTimesPassedOver() {
+        timesPassedOver++;
+    }
+
+    public void resetTimesPassedOver() {
+        timesPassedOver = 0;
+    }
+
+    /**
+     * Records a file mapping made by {@code MapFile}.
+     * @return The index page table entries refer to the mapping by.
+     */
+    public int addFileMapping(FileMapping mapping) {
+        return fileMappings.add(mapping);
+    }
+
+    public FileMapping getFileMapping(int index) {
+        return fileMappings.get(index);
+    }
+
+    /**
+     * Forgets a file mapping once none of its pages are mapped any more.
+     */
+    public void removeFileMapping(int index) {
+        fileMappings.remove(index);
+    }
+
+    /**
+     * Adds a descriptor for an open device.
+     * @param vfsID The device's VFS id.
+     * @return The new descriptor.
+     */
+    public int addDescriptor(int vfsID) {
+        return descriptors.add(vfsID);
+    }
+
+    /**
+     * Returns the VFS id a descriptor refers to, -1 if it is not open.
+     */
+    public int getDescriptor(int id) {
+        Integer vfsID = descriptors.get(id);
+        return vfsID == null ? -1 : vfsID;
+    }
+
+    /**
+     * Removes a descriptor.
+     * @return The VFS id it referred to, -1 if it was not open.
+     */
+    public int removeDescriptor(int id) {
+        Integer vfsID = descriptors.remove(id);
+        return vfsID == null ? -1 : vfsID;
+    }
+
+    /**
+     * Removes all descriptors.
+     * @return The VFS ids they referred to.
+     */
+    public int[] removeAllDescriptors() {
+        int[] vfsIDs = new int[descriptors.size()];
+        int next = 0;
+        for (int id = 0; id < descriptors.capacity(); id++) {
+            Integer vfsID = descriptors.remove(id);
+            if (vfsID != null)
+                vfsIDs[next++] = vfsID;
         }
-        return freedPages;
+        return vfsIDs;
     }
 
-    public Page[] getPageTable() {
+    public PageTable getPageTable() {
         return pageTable;
     }
 
@@ -1,12 +1,192 @@
-
 /**
- * Holds mapping information for a virtual page.
+ * Encoding of page table entries. An entry describes one virtual page in a
+ * single {@code long}, so page tables hold primitives rather than objects:
+ * <pre>
+ *   bits  0-9   flags, see below
+ *   bits 10-31  index of the page's file mapping in its process, for
+ *               {@code FILE} pages
+ *   bits 32-63  physical page address when {@code PRESENT}, page file slot
+ *               (in pages) when {@code SWAPPED}, handle in the kernel's
+ *               {@code SwapPool} when {@code COMPRESSED}
+ * </pre>
+ * An entry of 0 means the virtual page is not mapped.
+ * <p>
+ * A large page is described by the entry of its first virtual page. The
+ * entries of its other pages only carry {@code MAPPED | LARGE}.
+ * <p>
+ * Pages that are {@code ZERO} or {@code SHARED} are mapped read-only: writing
+ * to one faults into the kernel, which gives the page a frame of its own.
  */
-public class Page {
-    /** Page in memory that this virtual page maps to. Is -1 when no mapping
-     * exists, that is, this page is on disk instead. */
-    public int physicalPage = -1;
-    /** Page on disk that this virtual page maps to. Is -1 when no mapping
-     * exists, that is, this page is in memory instead. */
-    public int diskPage = -1;
+public final class Page {
+
+    /** The virtual page is mapped. Set in every entry that is not 0. */
+    public static final long MAPPED = 1;
+    /** The page is in memory. */
+    public static final long PRESENT = 1 << 1;
+    /** The page is in the page file. */
+    public static final long SWAPPED = 1 << 2;
+    /** The page is mapped from a file, see {@code OS.MapFile}. Such a page
+     * that is neither present nor swapped is read from its file. */
+    public static final long FILE = 1 << 3;
+    /** The page is part of a large page. */
+    public static final long LARGE = 1 << 4;
+    /** The page has been accessed since the bit was last cleared. Set when
+     * its translation is loaded into the TLB. */
+    public static final long REFERENCED = 1 << 5;
+    /** The page is compressed in the kernel's swap pool. */
+    public static final long COMPRESSED = 1 << 6;
+    /** The page has never been written, or was found to hold only zeros. It
+     * has no frame or slot of its own, reads are served by the kernel's
+     * shared zero page. */
+    public static final long ZERO = 1 << 7;
+    /** The page is present in a frame shared with identical pages, see
+     * {@code OS.MergePages}. Also set with {@code PRESENT}. */
+    public static final long SHARED = 1 << 8;
+    /** The page has been accessed since its process' working set was last
+     * sampled, see {@code PCB.sampleWorkingSet}. */
+    public static final long ACCESSED = 1 << 9;
+
+    /** Flags saying where a page is, cleared whenever it moves. */
+    private static final long WHERE = PRESENT | SWAPPED | COMPRESSED | ZERO | SHARED;
+    private static final int MAPPING_SHIFT = 10;
+    private static final long MAPPING_MASK = 0x3FFFFF;
+    private static final int LOCATION_SHIFT = 32;
+    private static final long LOCATION = -1L << LOCATION_SHIFT;
+
+    private Page() {}
+
+    /**
+     * Entry for a page of anonymous memory, not yet given a location.
+     */
+    public static long anonymous(boolean large) {
+        return MAPPED | (large ? LARGE : 0);
+    }
+
+    /**
+     * Entry for a small page of anonymous memory that has never been written.
+     */
+    public static long zero() {
+        return MAPPED | ZERO;
+    }
+
+    /**
+     * Entry for a page mapped from a file, not yet read in.
+     * @param mapping Index of the file mapping in the process.
+     */
+    public static long file(int mapping) {
+        return MAPPED | FILE | (long) mapping << MAPPING_SHIFT;
+    }
+
+    /**
+     * Returns {@code entry} moved into memory at {@code physicalPage}.
+     */
+    public static long present(long entry, int physicalPage) {
+        return (entry & ~(WHERE | LOCATION)) | PRESENT | (long) physicalPage << LOCATION_SHIFT;
+    }
+
+    /**
+     * Returns {@code entry} moved into the frame {@code physicalPage}, shared
+     * with other pages.
+     */
+    public static long shared(long entry, int physicalPage) {
+        return present(entry, physicalPage) | SHARED;
+    }
+
+    /**
+     * Returns {@code entry} moved out of memory to the zero page, for a page
+     * found to hold only zeros.
+     */
+    public static long zeroed(long entry) {
+        return (entry & ~(WHERE | LOCATION)) | ZERO;
+    }
+
+    /**
+     * Returns {@code entry} moved out of memory to page file slot
+     * {@code slot}.
+     */
+    public static long swapped(long entry, int slot) {
+        return (entry & ~(WHERE | LOCATION)) | SWAPPED | (long) slot << LOCATION_SHIFT;
+    }
+
+    /**
+     * Returns {@code entry} moved out of memory into the swap pool under
+     * {@code handle}.
+     */
+    public static long compressed(long entry, int handle) {
+        return (entry & ~(WHERE | LOCATION)) | COMPRESSED | (long) handle << LOCATION_SHIFT;
+    }
+
+    /**
+     * Returns {@code entry} taken out of memory without a copy being kept,
+     * for pages that can be read from their file again.
+     */
+    public static long dropped(long entry) {
+        return entry & ~(WHERE | LOCATION);
+    }
+
+    public static boolean isPresent(long entry) {
+        return (entry & PRESENT) != 0;
+    }
+
+    public static boolean isSwapped(long entry) {
+        return (entry & SWAPPED) != 0;
+    }
+
+    public static boolean isCompressed(long entry) {
+        return (entry & COMPRESSED) != 0;
+    }
+
+    public static boolean isZero(long entry) {
+        return (entry & ZERO) != 0;
+    }
+
+    public static boolean isShared(long entry) {
+        return (entry & SHARED) != 0;
+    }
+
+    public static boolean isFile(long entry) {
+        return (entry & FILE) != 0;
+    }
+
+    public static boolean isLarge(long entry) {
+        return (entry & LARGE) != 0;
+    }
+
+    public static boolean isReferenced(long entry) {
+        return (entry & REFERENCED) != 0;
+    }
+
+    public static boolean isAccessed(long entry) {
+        return (entry & ACCESSED) != 0;
+    }
+
+    /**
+     * Physical page address of a present entry, page file slot of a swapped
+     * one, swap pool handle of a compressed one.
+     */
+    public static int location(long entry) {
+        return (int) (entry >>> LOCATION_SHIFT);
+    }
+
+    /**
+     * Index of a file page's mapping in its process.
+     */
+    public static int mapping(long entry) {
+        return (int) ((entry >>> MAPPING_SHIFT) & MAPPING_MASK);
+    }
+
+    /**
+     * Number of pages the page an entry describes covers.
+     */
+    public static int pages(long entry) {
+        return isLarge(entry) ? Hardware.LARGE_PAGE_PAGES : 1;
+    }
+
+    /**
+     * Virtual page address of the entry describing {@code virtualPage}, the
+     * first page of its large page if it is part of one.
+     */
+    public static int head(long entry, int virtualPage) {
+        return isLarge(entry) ? virtualPage - virtualPage % Hardware.LARGE_PAGE_PAGES : virtualPage;
+    }
 }
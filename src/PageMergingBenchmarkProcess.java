@@ -0,0 +1,39 @@
+/**
+ * Starts {@code ConstantTableProcess}es, which each hold the same table, data
+ * of their own and untouched memory, and once they have filled their memory
+ * runs {@code OS.MergePages} over all of memory a few times. Reports the
+ * frames saved by the zero page and by merging, how long the passes took, and
+ * the copies made once the processes change part of their tables.
+ */
+public class PageMergingBenchmarkProcess extends UserlandProcess {
+
+    private static final int PROCESSES = 20;
+    /** Passes over memory. A page is merged on the second pass that finds it
+     * unchanged. */
+    private static final int PASSES = 3;
+    private static final int FILL_MILLIS = 2500;
+
+    @Override
+    public void main() {
+        for (int i = 0; i < PROCESSES; i++)
+            OS.CreateProcess(new ConstantTableProcess());
+        OS.Sleep(FILL_MILLIS);
+
+        MemoryStats before = OS.GetMemoryStats();
+        long start = System.nanoTime();
+        int freed = 0;
+        for (int pass = 0; pass < PASSES; pass++)
+            freed += OS.MergePages(Hardware.MEM_SIZE / Hardware.PAGE_SIZE);
+        long time = System.nanoTime() - start;
+        MemoryStats merged = OS.GetMemoryStats().since(before);
+        int used = PROCESSES * (ConstantTableProcess.TABLE_PAGES + ConstantTableProcess.RANDOM_PAGES);
+        println(String.format("%d processes, %d pages written and %d untouched: %d frames saved by the zero page, %d by merging into %d shared frames (%d freed by %d passes over memory in %.1f ms, %.1f us per page scanned)",
+                PROCESSES, used, PROCESSES * ConstantTableProcess.UNTOUCHED_PAGES, merged.zeroPages, merged.framesSavedByMerging, merged.sharedFrames,
+                freed, PASSES, time / 1e6, time / 1e3 / Math.max(1, merged.pagesScanned)));
+
+        OS.Sleep(ConstantTableProcess.HOLD_MILLIS);
+        MemoryStats changed = OS.GetMemoryStats().since(before);
+        println(String.format("after each process changed %d table pages: %d copies on write, %d frames saved by merging into %d shared frames",
+                ConstantTableProcess.CHANGED_PAGES, changed.copyOnWrites, changed.framesSavedByMerging, changed.sharedFrames));
+    }
+}
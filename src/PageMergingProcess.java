@@ -0,0 +1,19 @@
+/**
+ * Background same-page merging: looks at a slice of physical memory every so
+ * often for identical pages to merge, see {@code OS.MergePages}. Optional,
+ * start one from {@code Init} to have memory merged as processes run.
+ */
+public class PageMergingProcess extends UserlandProcess {
+
+    /** Physical pages looked at per slice, a full pass every 16 slices. */
+    private static final int PAGES_PER_SLICE = Hardware.MEM_SIZE / Hardware.PAGE_SIZE / 16;
+    private static final int SLEEP_MILLIS = 100;
+
+    @Override
+    public void main() {
+        while (true) {
+            OS.MergePages(PAGES_PER_SLICE);
+            OS.Sleep(SLEEP_MILLIS);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+import java.util.Arrays;
+
+/**
+ * Sparse, multi-level (radix) table of a process' virtual pages. A virtual
+ * page address is split into {@code LEVELS} groups of {@code BITS} bits, each
+ * indexing one level of the tree, the last level holding the page table
+ * entries themselves (see {@code Page}). Nodes are only allocated once a page
+ * below them is mapped and are dropped again once their last page is
+ * unmapped, so the table's size is proportional to the memory in use rather
+ * than to the address space.
+ * <p>
+ * Every node counts the pages mapped below it, which lets mapped pages be
+ * walked without visiting empty parts of the address space. A few dropped
+ * nodes are kept for reuse, so mapping and unmapping the same region over and
+ * over doesn't allocate.
+ */
+public class PageTable {
+
+    private static final int BITS = 7;
+    private static final int LEVELS = 3;
+    private static final int FANOUT = 1 << BITS;
+    /** Number of virtual pages addressable, 2 GB worth of 1 KB pages. */
+    public static final int PAGES = 1 << (BITS * LEVELS);
+    /** Number of dropped nodes of each kind kept for reuse. */
+    private static final int SPARE_NODES = 8;
+
+    private final Node root = new Node(false);
+    /** Dropped nodes, linked through {@code nextSpare}. */
+    private Node spareNodes, spareLeaves;
+    private int spareNodeCount = 0, spareLeafCount = 0;
+
+    private static class Node {
+        /** Child nodes, {@code null} at the last level. */
+        final Node[] children;
+        /** Page table entries, only at the last level. */
+        final long[] entries;
+        /** Number of pages mapped below this node. */
+        int count = 0;
+        Node nextSpare;
+
+        Node(boolean leaf) {
+            children = leaf ? null : new Node[FANOUT];
+            entries = leaf ? new long[FANOUT] : null;
+        }
+    }
+
+    /**
+     * Number of pages covered by each child of a node at {@code level}.
+     */
+    private static int span(int level) {
+        return 1 << (BITS * (LEVELS - 1 - level));
+    }
+
+    private static int index(int virtualPage, int level) {
+        return (virtualPage >>> (BITS * (LEVELS - 1 - level))) & (FANOUT - 1);
+    }
+
+    /**
+     * Returns the entry for {@code virtualPage}, 0 if it is not mapped.
+     */
+    public long get(int virtualPage) {
+        if (virtualPage < 0 || virtualPage >= PAGES)
+            return 0;
+        Node node = root;
+        for (int level = 0; level < LEVELS - 1; level++) {
+            node = node.children[index(virtualPage, level)];
+            if (node == null)
+                return 0;
+        }
+        return node.entries[index(virtualPage, LEVELS - 1)];
+    }
+
+    /**
+     * Sets the entry for {@code virtualPage}. Setting an entry of 0 unmaps the
+     * page, dropping any nodes left empty.
+     */
+    public void set(int virtualPage, long entry) {
+        long old = get(virtualPage);
+        if (old == 0 && entry == 0)
+            return;
+        int change = old == 0 ? 1 : entry == 0 ? -1 : 0;
+        Node node = root;
+        node.count += change;
+        for (int level = 0; level < LEVELS - 1; level++) {
+            int i = index(virtualPage, level);
+            Node child = node.children[i];
+            if (child == null)
+                child = node.children[i] = take(level + 1 == LEVELS - 1);
+            child.count += change;
+            if (child.count == 0) {
+                // the page was the last one below the child
+                node.children[i] = null;
+                drop(child);
+                return;
+            }
+            node = child;
+        }
+        node.entries[index(virtualPage, LEVELS - 1)] = entry;
+    }
+
+    /**
+     * Returns a spare node, or a new one if there is none.
+     */
+    private Node take(boolean leaf) {
+        Node node = leaf ? spareLeaves : spareNodes;
+        if (node == null)
+            return new Node(leaf);
+        if (leaf) {
+            spareLeaves = node.nextSpare;
+            spareLeafCount--;
+        } else {
+            spareNodes = node.nextSpare;
+            spareNodeCount--;
+        }
+        node.nextSpare = null;
+        return node;
+    }
+
+    /**
+     * Keeps an emptied subtree's nodes for reuse, as far as there is room.
+     */
+    private void drop(Node node) {
+        if (node.entries != null) {
+            if (spareLeafCount == SPARE_NODES)
+                return;
+            Arrays.fill(node.entries, 0);
+            node.count = 0;
+            node.nextSpare = spareLeaves;
+            spareLeaves = node;
+            spareLeafCount++;
+            return;
+        }
+        for (int i = 0; i < FANOUT; i++)
+            if (node.children[i] != null) {
+                drop(node.children[i]);
+                node.children[i] = null;
+            }
+        if (spareNodeCount == SPARE_NODES)
+            return;
+        node.count = 0;
+        node.nextSpare = spareNodes;
+        spareNodes = node;
+        spareNodeCount++;
+    }
+
+    /**
+     * Number of pages mapped.
+     */
+    public int size() {
+        return root.count;
+    }
+
+    /**
+     * Finds the lowest mapped virtual page address at or after {@code from}.
+     * @return The virtual page address, -1 if there is none.
+     */
+    public int next(int from) {
+        if (from < 0 || from >= PAGES)
+            return -1;
+        return next(root, 0, 0, from);
+    }
+
+    private int next(Node node, int level, int base, int from) {
+        int span = span(level);
+        for (int i = Math.max(0, (from - base) / span); i < FANOUT; i++) {
+            int start = base + i * span;
+            if (level == LEVELS - 1) {
+                if (node.entries[i] != 0)
+                    return start;
+                continue;
+            }
+            Node child = node.children[i];
+            if (child == null)
+                continue;
+            int found = next(child, level + 1, start, Math.max(start, from));
+            if (found != -1)
+                return found;
+        }
+        return -1;
+    }
+
+    /**
+     * Unmaps every page.
+     */
+    public void clear() {
+        for (int i = 0; i < FANOUT; i++)
+            if (root.children[i] != null) {
+                drop(root.children[i]);
+                root.children[i] = null;
+            }
+        root.count = 0;
+    }
+}
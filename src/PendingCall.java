@@ -0,0 +1,18 @@
+/**
+ * A system call that could not complete right away and whose caller has been
+ * put into a waiting state. The scheduler retries the call before picking a
+ * process to run, waking the caller once it completes.
+ */
+public interface PendingCall {
+    /**
+     * Attempts to make progress on the call without blocking.
+     * @return {@code true} once the call has completed.
+     */
+    boolean tryComplete();
+
+    /**
+     * The value the system call returns to its caller. Only valid once
+     * {@code tryComplete()} has returned {@code true}.
+     */
+    Object getResult();
+}
@@ -5,7 +5,7 @@ public class Piggy extends UserlandProcess {
     @Override
     public void main() {
         Random random = new Random();
-        System.out.println("piggy");
+        println("piggy");
 
         // allocate memory
         int p = OS.AllocateMemory(100 * 1024);
@@ -33,6 +33,6 @@ public class Piggy extends UserlandProcess {
         }
 
         OS.FreeMemory(p, 100 * 1024);
-        System.out.println("Memory successfully allocated, checked, and freed!");
+        println("Memory successfully allocated, checked, and freed!");
     }
 }
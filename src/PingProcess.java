@@ -6,7 +6,7 @@ public class PingProcess extends UserlandProcess {
         int pongPID = OS.GetPidByName("PongProcess");
         if (pongPID == -1)
             throw new RuntimeException("Process 'PongProcess' not found");
-        System.out.println(String.format("I am ping (pid: %d) trying to contact 'PongProcess' (pid: %d)", OS.GetPID(), pongPID));
+        println(String.format("I am ping (pid: %d) trying to contact 'PongProcess' (pid: %d)", OS.GetPID(), pongPID));
         KernelMessage send, recv;
         int i = 0;
         while (true) {
@@ -14,7 +14,7 @@ public class PingProcess extends UserlandProcess {
             OS.SendMessage(send);
             recv = OS.WaitForMessage();
             i = recv.getType() + 1;
-            System.out.println(recv);
+            println(recv.toString());
         }
     }
 }
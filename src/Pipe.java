@@ -0,0 +1,82 @@
+/**
+ * A byte stream between processes backed by a fixed-size ring buffer. It has
+ * no separate read and write ends: every open handle may both read and write,
+ * and reads whatever any handle has written.
+ */
+public class Pipe {
+
+    /** Number of bytes a pipe can buffer. */
+    public static final int CAPACITY = 4096;
+
+    private final byte[] buffer = new byte[CAPACITY];
+    /** Index of the oldest unread byte. */
+    private int head = 0;
+    /** Number of unread bytes. */
+    private int size = 0;
+    /** Number of handles currently open to this pipe. */
+    private int handles = 0;
+    /** Whether more than one handle has ever been open at once. */
+    private boolean hadPeer = false;
+
+    public void open() {
+        handles++;
+        if (handles > 1)
+            hadPeer = true;
+    }
+
+    public void close() {
+        handles--;
+    }
+
+    public int getHandles() {
+        return handles;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isFull() {
+        return size == buffer.length;
+    }
+
+    /**
+     * A pipe is hung up once its peer has closed, leaving a single handle.
+     * Reading an empty hung up pipe returns end of stream and writing to one
+     * fails.
+     */
+    public boolean isHungUp() {
+        return hadPeer && handles <= 1;
+    }
+
+    /**
+     * Reads up to {@code max} bytes. Returns an empty array if the pipe is
+     * empty.
+     */
+    public byte[] read(int max) {
+        int count = Math.min(max, size);
+        byte[] data = new byte[count];
+        int first = Math.min(count, buffer.length - head);
+        System.arraycopy(buffer, head, data, 0, first);
+        System.arraycopy(buffer, 0, data, first, count - first);
+        head = (head + count) % buffer.length;
+        size -= count;
+        return data;
+    }
+
+    /**
+     * Writes as much of {@code data} as fits into the pipe.
+     * @return Number of bytes written. -1 if the pipe is hung up.
+     */
+    public int write(byte[] data) {
+        if (isHungUp())
+            return -1;
+        int count = Math.min(data.length, buffer.length - size);
+        int tail = (head + size) % buffer.length;
+        int first = Math.min(count, buffer.length - tail);
+        System.arraycopy(data, 0, buffer, tail, first);
+        System.arraycopy(data, first, buffer, 0, count - first);
+        size += count;
+        return count;
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Compares streaming bytes between two processes through a pipe against
+ * streaming them as {@code KernelMessage}s.
+ */
+public class PipeBenchmarkProcess extends UserlandProcess {
+
+    /** Bytes streamed by each run. */
+    private static final int TOTAL = 4 * 1024 * 1024;
+    /** Bytes per write or message. */
+    private static final int CHUNK = 1024;
+
+    @Override
+    public void main() {
+        // pipe
+        int fd = OS.Open("pipe benchmark");
+        long start = System.nanoTime();
+        OS.CreateProcess(new PipeWriter());
+        int received = 0, reads = 0;
+        while (received < TOTAL) {
+            received += OS.Read(fd, Pipe.CAPACITY).length;
+            reads++;
+        }
+        long pipeTime = System.nanoTime() - start;
+        OS.Close(fd);
+        report("pipe", pipeTime, reads);
+
+        // messages
+        start = System.nanoTime();
+        OS.CreateProcess(new MessageWriter(OS.GetPID()));
+        received = 0;
+        int messages = 0;
+        while (received < TOTAL) {
+            received += OS.WaitForMessage().getData().length;
+            messages++;
+        }
+        long messageTime = System.nanoTime() - start;
+        report("messages", messageTime, messages);
+        println(String.format("Pipe speedup over messages: %.2fx", (double) messageTime / pipeTime));
+    }
+
+    private void report(String name, long nanos, int calls) {
+        double seconds = nanos / 1e9;
+        println(String.format("%-8s %d bytes in %.3f s, %.2f MB/s, %d receive calls",
+                name, TOTAL, seconds, TOTAL / seconds / (1024 * 1024), calls));
+    }
+
+    public static class PipeWriter extends UserlandProcess {
+        @Override
+        public void main() {
+            int fd = OS.Open("pipe benchmark");
+            byte[] chunk = new byte[CHUNK];
+            for (int sent = 0; sent < TOTAL; sent += CHUNK)
+                OS.Write(fd, chunk);
+            OS.Close(fd);
+            OS.Exit();
+        }
+    }
+
+    public static class MessageWriter extends UserlandProcess {
+        private final int readerPID;
+
+        public MessageWriter(int readerPID) {
+            this.readerPID = readerPID;
+        }
+
+        @Override
+        public void main() {
+            byte[] chunk = new byte[CHUNK];
+            for (int sent = 0; sent < TOTAL; sent += CHUNK)
+                OS.SendMessage(new KernelMessage(readerPID, 0, chunk));
+            OS.Exit();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+import java.util.HashMap;
+
+/**
+ * Device providing pipes between processes. {@code "pipe <name>"} opens the
+ * named pipe, creating it if necessary, so that unrelated processes can share
+ * it. A bare {@code "pipe"} fails, as there is no way to hand a pipe's
+ * handle to another process.
+ */
+public class PipeDevice implements BlockingDevice {
+
+    private final HandleTable<Pipe> pipes = new HandleTable<>();
+    private final HashMap<String, Pipe> namedPipes = new HashMap<>();
+
+    @Override
+    public int Open(String s) {
+        if (s == null || s.isEmpty())
+            return -1;
+        Pipe pipe = namedPipes.computeIfAbsent(s, name -> new Pipe());
+        pipe.open();
+        return pipes.add(pipe);
+    }
+
+    @Override
+    public void Close(int id) {
+        Pipe pipe = pipes.remove(id);
+        if (pipe == null)
+            return;
+        pipe.close();
+        if (pipe.getHandles() == 0)
+            namedPipes.values().remove(pipe);
+    }
+
+    /**
+     * Reads up to {@code size} bytes currently in the pipe. Returns an empty
+     * array if nothing is available, see {@code canRead}.
+     */
+    @Override
+    public byte[] Read(int id, int size) {
+        return pipes.get(id).read(size);
+    }
+
+    /**
+     * Pipes are not seekable, does nothing.
+     */
+    @Override
+    public void Seek(int id, int to) {}
+
+    /**
+     * Writes as much of {@code data} as fits into the pipe.
+     * @return Number of bytes written. -1 if the other end has closed.
+     */
+    @Override
+    public int Write(int id, byte[] data) {
+        return pipes.get(id).write(data);
+    }
+
+    @Override
+    public boolean canRead(int id) {
+        Pipe pipe = pipes.get(id);
+        return !pipe.isEmpty() || pipe.isHungUp();
+    }
+
+    @Override
+    public boolean canWrite(int id) {
+        Pipe pipe = pipes.get(id);
+        return !pipe.isFull() || pipe.isHungUp();
+    }
+}
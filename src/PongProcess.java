@@ -6,7 +6,7 @@ public class PongProcess extends UserlandProcess {
         int pingPID = OS.GetPidByName("PingProcess");
         if (pingPID == -1)
             throw new RuntimeException("Process 'PingProcess' not found");
-        System.out.println(String.format("I am pong (pid: %d) trying to contact 'PingProcess' (pid: %d)", OS.GetPID(), pingPID));
+        println(String.format("I am pong (pid: %d) trying to contact 'PingProcess' (pid: %d)", OS.GetPID(), pingPID));
         KernelMessage send, recv;
         int i;
         while (true) {
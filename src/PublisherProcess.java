@@ -0,0 +1,15 @@
+import java.nio.charset.StandardCharsets;
+
+public class PublisherProcess extends UserlandProcess {
+    @Override
+    public void main() {
+        int i = 0;
+        while (true) {
+            byte[] data = String.format("telemetry %d", i).getBytes(StandardCharsets.UTF_8);
+            int delivered = OS.Publish("telemetry", i, data);
+            println(String.format("Published telemetry %d to %d subscribers", i, delivered));
+            i++;
+            OS.Sleep(500);
+        }
+    }
+}
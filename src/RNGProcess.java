@@ -5,7 +5,7 @@ public class RNGProcess extends UserlandProcess {
         int random2 = OS.Open("random 123456789");
         int random3 = OS.Open("random 314159265");
 
-        System.out.println(String.format("Today's random numbers are: %d, %d, %d",
+        println(String.format("Today's random numbers are: %d, %d, %d",
                 (int)(OS.Read(random1, 1)[0]),
                 (int)(OS.Read(random2, 1)[0]),
                 (int)(OS.Read(random3, 1)[0])));
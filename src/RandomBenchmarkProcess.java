@@ -0,0 +1,50 @@
+import java.util.Random;
+
+/**
+ * Measures the random device's read throughput and the cost of seeking it,
+ * next to what the same work costs with {@code java.util.Random}, which the
+ * device used to wrap.
+ */
+public class RandomBenchmarkProcess extends UserlandProcess {
+
+    private static final int TOTAL = 256 * 1024 * 1024;
+    private static final int CHUNK = 1024 * 1024;
+    private static final int[] SEEKS = { 1024, 1024 * 1024, 64 * 1024 * 1024 };
+
+    @Override
+    public void main() {
+        byte[] buffer = new byte[CHUNK];
+        int fd = OS.Open("random 123456789");
+
+        long start = System.nanoTime();
+        for (int read = 0; read < TOTAL; read += CHUNK)
+            OS.ReadInto(fd, buffer, 0, CHUNK);
+        long deviceTime = System.nanoTime() - start;
+
+        Random random = new Random(123456789);
+        start = System.nanoTime();
+        for (int read = 0; read < TOTAL; read += CHUNK)
+            random.nextBytes(buffer);
+        long baselineTime = System.nanoTime() - start;
+
+        println(String.format("read %d MB: device %.0f MB/s, java.util.Random %.0f MB/s",
+                TOTAL / (1024 * 1024), TOTAL / (deviceTime / 1e9) / (1024 * 1024), TOTAL / (baselineTime / 1e9) / (1024 * 1024)));
+
+        for (int distance : SEEKS) {
+            start = System.nanoTime();
+            OS.Seek(fd, distance);
+            OS.Read(fd, 1);
+            long seekTime = System.nanoTime() - start;
+
+            // what seeking used to do: generate and throw away every byte
+            start = System.nanoTime();
+            random.nextBytes(new byte[distance]);
+            random.nextBytes(new byte[1]);
+            long skipTime = System.nanoTime() - start;
+
+            println(String.format("seek %d bytes: device %.1f us, discarding with java.util.Random %.1f us",
+                    distance, seekTime / 1e3, skipTime / 1e3));
+        }
+        OS.Close(fd);
+    }
+}
@@ -1,52 +1,127 @@
-import java.util.Random;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.concurrent.ThreadLocalRandom;
 
+/**
+ * Device producing streams of random bytes. {@code "random <seed>"} opens a
+ * stream that is the same every time for the same seed.
+ * <p>
+ * Streams are counter based: the 8 bytes at word {@code i} of a stream are a
+ * SplitMix64 mix of {@code seed + (i + 1) * GAMMA}. Any position can be
+ * computed directly, so seeking is O(1), and reads fill buffers 8 bytes at a
+ * time with no shared state between handles.
+ */
 public class RandomDevice implements Device {
 
-    private final Random[] randoms = new Random[10];
+    /** SplitMix64 increment, the odd integer closest to 2^64 divided by the
+     * golden ratio. */
+    private static final long GAMMA = 0x9E3779B97F4A7C15L;
+    /** Stores a long into a byte array as 8 little endian bytes at once. */
+    private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final HandleTable<Stream> streams = new HandleTable<>();
+
+    /**
+     * An open stream.
+     */
+    private static class Stream {
+        final long seed;
+        /** Offset of the next byte to read. */
+        long position = 0;
+
+        Stream(long seed) {
+            this.seed = seed;
+        }
+    }
 
     @Override
     public int Open(String s) {
-        int index = -1;
-        for (int i = 0; i < randoms.length; i++)
-            if (randoms[i] == null) {
-                index = i;
-                break;
-            }
-        if (index == -1)
-            return -1;
-
+        long seed;
         if (s == null || s.isEmpty())
-            randoms[index] = new Random();
+            seed = ThreadLocalRandom.current().nextLong();
         else {
             try {
-                long seed = Long.parseLong(s);
-                randoms[index] = new Random(seed);
+                seed = Long.parseLong(s);
             } catch (NumberFormatException e) {
                 return -1;
             }
         }
-        return index;
+        return streams.add(new Stream(seed));
     }
 
     @Override
     public void Close(int id) {
-        randoms[id] = null;
+        streams.remove(id);
     }
 
     @Override
     public byte[] Read(int id, int size) {
         byte[] bytes = new byte[size];
-        randoms[id].nextBytes(bytes);
+        ReadInto(id, bytes, 0, size);
         return bytes;
     }
 
+    @Override
+    public int ReadInto(int id, byte[] buffer, int offset, int length) {
+        Stream stream = streams.get(id);
+        fill(stream.seed, stream.position, buffer, offset, length);
+        stream.position += length;
+        return length;
+    }
+
+    /**
+     * Reads the bytes at {@code position} of the stream without moving it.
+     */
+    @Override
+    public int ReadAt(int id, int position, byte[] buffer, int offset, int length) {
+        fill(streams.get(id).seed, position, buffer, offset, length);
+        return length;
+    }
+
+    /**
+     * Skips {@code to} bytes ahead in the stream.
+     */
     @Override
     public void Seek(int id, int to) {
-        randoms[id].nextBytes(new byte[to]);
+        streams.get(id).position += to;
     }
 
     @Override
     public int Write(int id, byte[] data) {
         return 0;
     }
+
+    /**
+     * Returns word {@code index} of the stream with the given seed.
+     */
+    private static long word(long seed, long index) {
+        long z = seed + (index + 1) * GAMMA;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Copies {@code length} bytes of a stream starting at {@code position}
+     * into {@code buffer}. Bytes within a word are in little endian order.
+     */
+    private static void fill(long seed, long position, byte[] buffer, int offset, int length) {
+        int end = offset + length;
+        long index = position >>> 3;
+        // finish the word position is part way into
+        int skip = (int) (position & 7);
+        if (skip != 0 && offset < end) {
+            long word = word(seed, index++) >>> (skip * 8);
+            for (int n = Math.min(8 - skip, end - offset); n-- > 0; word >>>= 8)
+                buffer[offset++] = (byte) word;
+        }
+        // whole words
+        for (; offset + 8 <= end; offset += 8)
+            LONG_LE.set(buffer, offset, word(seed, index++));
+        // start of the last word
+        if (offset < end)
+            for (long word = word(seed, index); offset < end; word >>>= 8)
+                buffer[offset++] = (byte) word;
+    }
 }
@@ -0,0 +1,58 @@
+/**
+ * Runs 20 processes that together want twice the machine's memory, with
+ * residency scheduling off, on, and on with prefaulting: the {@code Piggy}s
+ * {@code Init} starts by default, which read their memory back once, and
+ * {@code SweepProcess}es, which sweep over theirs again and again. Load
+ * control is off throughout, so no process is suspended. Reports the pages
+ * swapped back in, and the time taken.
+ */
+public class ResidencySchedulingBenchmarkProcess extends UserlandProcess {
+
+    private static final int PROCESSES = 20;
+    private static final int SWEEPS = 500;
+
+    @Override
+    public void main() {
+        OS.SetLoadControl(false);
+        for (boolean sweep : new boolean[] {false, true}) {
+            run(sweep, "off", false, false);
+            run(sweep, "on", true, false);
+            run(sweep, "on, prefault", true, true);
+        }
+        OS.SetResidencyScheduling(true);
+        OS.SetPrefault(false);
+        OS.SetLoadControl(true);
+    }
+
+    private void run(boolean sweep, String name, boolean residencyScheduling, boolean prefault) {
+        OS.SetResidencyScheduling(residencyScheduling);
+        OS.SetPrefault(prefault);
+        MemoryStats before = OS.GetMemoryStats();
+        long start = System.nanoTime();
+        for (int i = 0; i < PROCESSES; i++)
+            OS.CreateProcess(sweep ? new SweepProcess(OS.GetPID(), SWEEPS) : new NotifyingPiggy(OS.GetPID()));
+        for (int i = 0; i < PROCESSES; i++)
+            OS.WaitForMessage();
+        long time = System.nanoTime() - start;
+        MemoryStats run = OS.GetMemoryStats().since(before);
+        println(String.format("%-6s residency scheduling %-12s: %5d pages swapped in (%d prefaulted), %4d page faults, %4d swap reads, %5d swap outs; %.1f s",
+                sweep ? "sweep" : "piggy", name, run.pagesSwappedIn, run.pagesPrefaulted, run.pageFaults, run.swapReads, run.swapOuts, time / 1e9));
+    }
+
+    /**
+     * A {@code Piggy} that tells the benchmark when it is done.
+     */
+    public static class NotifyingPiggy extends Piggy {
+        private final int benchmarkPID;
+
+        public NotifyingPiggy(int benchmarkPID) {
+            this.benchmarkPID = benchmarkPID;
+        }
+
+        @Override
+        public void main() {
+            super.main();
+            OS.SendMessage(new KernelMessage(benchmarkPID, 0, new byte[0]));
+        }
+    }
+}
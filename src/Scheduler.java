@@ -23,7 +23,38 @@ public class Scheduler {
             }
         }
     );
+    /** Processes waiting for a message that has not arrived yet. */
     private final ArrayList<PCB> awaitingMessage = new ArrayList<>();
+    /** Processes that were waiting for a message and have since received a
+     * matching one. The message is taken from the mailbox when they run. */
+    private final LinkedList<PCB> messageReady = new LinkedList<>();
+    /** Processes blocked sending to a full mailbox. Each holds the message it
+     * is trying to send in {@code PCB.getPendingMessage()}. */
+    private final ArrayList<PCB> awaitingMailboxSpace = new ArrayList<>();
+    /** Processes waiting on a system call that could not complete right
+     * away, see {@code PCB.getPendingCall()}. */
+    private final ArrayList<PCB> awaitingCall = new ArrayList<>();
+    /** Processes suspended by the kernel's load control, longest suspended
+     * first. They don't run until resumed. */
+    private final LinkedList<PCB> suspended = new LinkedList<>();
+    /** Suspended processes that are ready to run, kept off the process
+     * queues. */
+    private final ArrayList<PCB> suspendedReady = new ArrayList<>();
+    /** Whether processes mostly in memory are picked before those mostly
+     * swapped out, see {@code OS.SetResidencyScheduling}. */
+    private boolean residencyScheduling = true;
+    /** Added to a process' resident fraction each time it is passed over,
+     * so a process swapped out entirely catches up with one fully in memory
+     * after being passed over four times. */
+    private static final double RESIDENCY_AGING = 0.25;
+    /** The idle process, run when nothing else is ready, and the time spent
+     * running it. */
+    private final PCB idle;
+    private long idleNanos = 0, idleSince;
+
+    /** Publish/subscribe channels by name. Channels exist only while they
+     * have subscribers. */
+    private final HashMap<String, Channel> channels = new HashMap<>();
 
     private final Timer  timer = new Timer();
     private final Clock  clock = Clock.systemDefaultZone();
@@ -36,7 +67,7 @@ public class Scheduler {
     public Scheduler(UserlandProcess init) {
 //        this.currentlyRunning = new PCB(new IdleProcess(), OS.PriorityType.background);
         CreateProcess(init, OS.PriorityType.interactive);
-        CreateProcess(new IdleProcess(), OS.PriorityType.background);
+        idle = pcbByPID.get(CreateProcess(new IdleProcess(), OS.PriorityType.background));
         TimerTask task = new TimerTask() {
             @Override
             public void run() {
@@ -57,7 +88,20 @@ public class Scheduler {
      * @return Process ID of the newly created process
      */
     public int CreateProcess(UserlandProcess up, OS.PriorityType p) {
-        PCB pcb = new PCB(up, p);
+        return CreateProcess(up, p, Mailbox.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new PCB container for a userland process and adds it to the
+     * scheduler.
+     * @param up the process to add
+     * @param p  the process' priority
+     * @param mailboxCapacity maximum number of messages the process' mailbox
+     *                        can hold
+     * @return Process ID of the newly created process
+     */
+    public int CreateProcess(UserlandProcess up, OS.PriorityType p, int mailboxCapacity) {
+        PCB pcb = new PCB(up, p, mailboxCapacity);
         switch (p) {
             case OS.PriorityType.interactive -> interactiveQueue.add(pcb);
             case OS.PriorityType.background  -> backgroundQueue.add(pcb);
@@ -103,7 +147,11 @@ public class Scheduler {
             else
                 RequeueRunningProcess();
         }
+        if (currentlyRunning == idle)
+            idleNanos += System.nanoTime() - idleSince;
         currentlyRunning = nextProcess;
+        if (currentlyRunning == idle)
+            idleSince = System.nanoTime();
     }
 
     /**
@@ -114,40 +162,112 @@ public class Scheduler {
      */
     private PCB GetNextProcess() {
 
+        while (!sleepingQueue.isEmpty() && sleepingQueue.peek().isSuspended()
+                && clock.millis() >= sleepingQueue.peek().getWakeTime())
+            // woke while suspended
+            suspendedReady.add(sleepingQueue.remove());
         if (!sleepingQueue.isEmpty())
-            if (clock.millis() >= sleepingQueue.peek().getWakeTime())
-                return sleepingQueue.remove();
-
-        if (!awaitingMessage.isEmpty()) {
-            for (int i = 0; i < awaitingMessage.size(); i++) {
-                PCB pcb = awaitingMessage.get(i);
-                KernelMessage msg = pcb.readMessage();
-                if (msg == null)
+            if (clock.millis() >= sleepingQueue.peek().getWakeTime()) {
+                PCB pcb = sleepingQueue.remove();
+                if (pcb.isAwaitingMessage()) {
+                    // waiting for a message timed out
+                    awaitingMessage.remove(pcb);
+                    pcb.stopAwaitingMessage();
+                    OS.retVal = null;
+                }
+                return pcb;
+            }
+
+        if (!awaitingMailboxSpace.isEmpty()) {
+            for (int i = 0; i < awaitingMailboxSpace.size(); i++) {
+                PCB pcb = awaitingMailboxSpace.get(i);
+                KernelMessage msg = pcb.getPendingMessage();
+                PCB target = pcbByPID.get(msg.getTargetPID());
+                // wake the sender once there is room, or with a failure if the
+                // target exited while the sender was blocked
+                boolean delivered = target != null && DeliverTo(target, msg);
+                if (!delivered && target != null)
                     continue;
-                OS.retVal = msg;
-                awaitingMessage.remove(i);
+                OS.retVal = delivered;
+                pcb.setPendingMessage(null);
+                awaitingMailboxSpace.remove(i);
                 return pcb;
             }
         }
 
+        if (!awaitingCall.isEmpty()) {
+            for (int i = 0; i < awaitingCall.size(); i++) {
+                PCB pcb = awaitingCall.get(i);
+                PendingCall call = pcb.getPendingCall();
+                if (!call.tryComplete())
+                    continue;
+                OS.retVal = call.getResult();
+                pcb.setPendingCall(null);
+                awaitingCall.remove(i);
+                return pcb;
+            }
+        }
+
+        if (!messageReady.isEmpty()) {
+            PCB pcb = messageReady.remove();
+            OS.retVal = pcb.readAwaitedMessage();
+            pcb.stopAwaitingMessage();
+            return pcb;
+        }
+
         int randint = rng.nextInt(100);
         if (!realtimeQueue.isEmpty()) {
             if (!backgroundQueue.isEmpty() && randint < 10)
-                return backgroundQueue.remove();
+                return Dequeue(backgroundQueue);
             if (!interactiveQueue.isEmpty() && randint < 30)
-                return interactiveQueue.remove();
-            return realtimeQueue.remove();
+                return Dequeue(interactiveQueue);
+            return Dequeue(realtimeQueue);
         }
         if (!interactiveQueue.isEmpty()) {
             if (!backgroundQueue.isEmpty() && randint < 25)
-                return backgroundQueue.remove();
-            return interactiveQueue.remove();
+                return Dequeue(backgroundQueue);
+            return Dequeue(interactiveQueue);
         }
         if (!backgroundQueue.isEmpty())
-            return backgroundQueue.remove();
+            return Dequeue(backgroundQueue);
         return null;
     }
 
+    /**
+     * Removes the process to run next from a process queue: the one at the
+     * front, or with residency scheduling, the one with the largest fraction
+     * of its pages in memory, so processes that can run without waiting on
+     * swap-ins go first. Processes ahead of the one picked are aged by
+     * {@code RESIDENCY_AGING}, so none is passed over forever. While nothing
+     * is swapped out, every process is fully resident and the front one is
+     * picked.
+     * @param queue Process queue, not empty.
+     * @return The process removed.
+     */
+    private PCB Dequeue(LinkedList<PCB> queue) {
+        if (!residencyScheduling || queue.size() == 1)
+            return queue.remove();
+        int best = 0;
+        double bestScore = -1;
+        ListIterator<PCB> it = queue.listIterator();
+        while (it.hasNext()) {
+            int index = it.nextIndex();
+            PCB pcb = it.next();
+            double score = pcb.getResidentFraction() + pcb.getTimesPassedOver() * RESIDENCY_AGING;
+            if (score > bestScore) {
+                best = index;
+                bestScore = score;
+            }
+        }
+        it = queue.listIterator();
+        for (int i = 0; i < best; i++)
+            it.next().incrementTimesPassedOver();
+        PCB pcb = it.next();
+        it.remove();
+        pcb.resetTimesPassedOver();
+        return pcb;
+    }
+
     /**
      * Requeue (add) the currently running process back into its proper queue
      * and clear {@code currentlyRunning}. Also handles process priority
@@ -193,39 +313,279 @@ public class Scheduler {
 
     /**
      * Checks if the currently running process has a {@code KernelMessage} in
-     * its message queue and returns it. Otherwise, the process is put into a
-     * waiting state until it receives one and a new process will run.
+     * its message queue that passes the given filter and returns it.
+     * Otherwise, the process is put into a waiting state until it receives a
+     * matching one or the timeout expires, and a new process will run.
+     * @param senderPID Sender to accept, or {@code KernelMessage.ANY_SENDER}.
+     * @param typeMask Types to accept, see {@code KernelMessage.matches}.
+     * @param timeout Maximum time to wait in milliseconds. 0 returns
+     *                immediately and a negative value waits forever.
      * @return The message, if there is one. Otherwise, {@code null} and the
-     * process is placed into a waiting state.
+     * process is placed into a waiting state unless {@code timeout} is 0.
      */
-    public KernelMessage AwaitMessage() {
-        KernelMessage msg = currentlyRunning.readMessage();
-        if (msg != null)
+    public KernelMessage AwaitMessage(int senderPID, long typeMask, int timeout) {
+        KernelMessage msg = currentlyRunning.readMessage(senderPID, typeMask);
+        if (msg != null || timeout == 0)
             return msg;
+        currentlyRunning.resetTimeoutCounter();
+        currentlyRunning.awaitMessage(senderPID, typeMask);
         awaitingMessage.add(currentlyRunning);
+        if (timeout > 0) {
+            // share the sleeping queue so the process wakes when it times out
+            currentlyRunning.setWakeTime(clock.millis() + timeout);
+            sleepingQueue.add(currentlyRunning);
+        }
         currentlyRunning = null;
         SwitchProcess();
         return null;
     }
 
+    /**
+     * Puts the currently running process into a waiting state until
+     * {@code call} completes and a new process will run. The call's result is
+     * returned to the process when it wakes.
+     * @param call System call the process is waiting on.
+     */
+    public void Block(PendingCall call) {
+        currentlyRunning.resetTimeoutCounter();
+        currentlyRunning.setPendingCall(call);
+        awaitingCall.add(currentlyRunning);
+        currentlyRunning = null;
+        SwitchProcess();
+    }
+
     /**
      * Destroys whatever process is currently running.
      */
     private void DestroyRunningProcess() {
         pcbByName.remove(currentlyRunning.getClass().getSimpleName());
         pcbByPID.remove(currentlyRunning.pid);
+        Iterator<Channel> it = channels.values().iterator();
+        while (it.hasNext()) {
+            Channel channel = it.next();
+            channel.unsubscribe(currentlyRunning);
+            if (!channel.hasSubscribers())
+                it.remove();
+        }
     }
 
     /**
      * Delivers a {@code KernelMessage} to its associated process. Fails
-     * saliently if the process cannot be found.
+     * silently if the process cannot be found. If the target's mailbox is full,
+     * either the message is dropped, or the currently running process is put
+     * into a waiting state until there is room and a new process will run.
      * @param msg message to deliver
+     * @param block When true, block the sender if the mailbox is full rather
+     *              than dropping the message.
+     * @return {@code true} if the message was delivered, {@code false} if it
+     * was dropped, and {@code null} if the sender was put into a waiting state.
      */
-    public void DeliverMessage(KernelMessage msg) {
+    public Boolean DeliverMessage(KernelMessage msg, boolean block) {
         PCB targetPCB = pcbByPID.get(msg.getTargetPID());
         if (targetPCB == null)
-            return;
-        targetPCB.deliverMessage(msg);
+            return false;
+        if (DeliverTo(targetPCB, msg))
+            return true;
+        Mailbox mailbox = targetPCB.getMailbox();
+        if (!block) {
+            mailbox.recordDrop();
+            return false;
+        }
+        mailbox.recordBlock();
+        currentlyRunning.setPendingMessage(msg);
+        awaitingMailboxSpace.add(currentlyRunning);
+        currentlyRunning = null;
+        SwitchProcess();
+        return null;
+    }
+
+    /**
+     * Subscribes the currently running process to a channel, creating the
+     * channel if it does not exist.
+     * @param name Channel name.
+     * @return {@code false} if the process was already subscribed.
+     */
+    public boolean Subscribe(String name) {
+        Channel channel = channels.computeIfAbsent(name, Channel::new);
+        return channel.subscribe(currentlyRunning);
+    }
+
+    /**
+     * Unsubscribes the currently running process from a channel. The channel
+     * is removed once it has no subscribers left.
+     * @param name Channel name.
+     * @return {@code false} if the process was not subscribed.
+     */
+    public boolean Unsubscribe(String name) {
+        Channel channel = channels.get(name);
+        if (channel == null)
+            return false;
+        boolean removed = channel.unsubscribe(currentlyRunning);
+        if (!channel.hasSubscribers())
+            channels.remove(name);
+        return removed;
+    }
+
+    /**
+     * Delivers a message to every subscriber of a channel in a single pass.
+     * All subscribers share {@code data}, which must not be modified
+     * afterwards. Publishing never blocks; subscribers whose mailbox is full
+     * miss the message.
+     * @param name Channel name.
+     * @param type Message type.
+     * @param data Payload shared by every delivered message.
+     * @return Number of subscribers the message was delivered to.
+     */
+    public int Publish(String name, int type, byte[] data) {
+        Channel channel = channels.get(name);
+        if (channel == null)
+            return 0;
+        channel.recordPublish();
+        int delivered = 0;
+        for (PCB subscriber : channel.getSubscribers()) {
+            KernelMessage msg = new KernelMessage(subscriber.pid, type, data, name);
+            msg.setSenderPID(currentlyRunning.pid);
+            if (DeliverTo(subscriber, msg))
+                delivered++;
+            else {
+                subscriber.getMailbox().recordDrop();
+                channel.recordDrop();
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * Returns a snapshot of a process' mailbox statistics, {@code null} if
+     * there is no such process.
+     */
+    public MailboxStats GetMailboxStats(int pid) {
+        PCB pcb = pcbByPID.get(pid);
+        return pcb == null ? null : new MailboxStats(pcb.getMailbox());
+    }
+
+    /**
+     * Returns a snapshot of a channel's statistics, {@code null} if there is
+     * no such channel.
+     */
+    public ChannelStats GetChannelStats(String name) {
+        Channel channel = channels.get(name);
+        return channel == null ? null : new ChannelStats(channel);
+    }
+
+    /**
+     * Adds a message to a process' mailbox. If the process is waiting for a
+     * message this one matches, the message is handed to it directly instead,
+     * even if its mailbox is full, and the process is moved out of its
+     * waiting state to receive it when it next runs.
+     * @return {@code false} if the mailbox is full.
+     */
+    private boolean DeliverTo(PCB target, KernelMessage msg) {
+        if (target.isAwaitedMessage(msg) && awaitingMessage.remove(target)) {
+            // straight to the waiter, so a mailbox full of messages it isn't
+            // waiting for can't keep it from ever waking
+            target.handMessage(msg);
+            sleepingQueue.remove(target);
+            messageReady.add(target);
+            return true;
+        }
+        return target.deliverMessage(msg);
+    }
+
+    /**
+     * Cuts the idle process' time short, so a process that became ready while
+     * nothing else was, such as one whose page has been read in, runs right
+     * away. May be called from any thread, like the timer.
+     */
+    public void PreemptIdle() {
+        PCB running = currentlyRunning;
+        if (running == idle)
+            running.requestStop();
+    }
+
+    /**
+     * Total time spent running the idle process, having nothing else to run.
+     */
+    public long GetIdleNanos() {
+        return idleNanos;
+    }
+
+    public void SetResidencyScheduling(boolean enabled) {
+        residencyScheduling = enabled;
+    }
+
+    /**
+     * Picks a process for load control to suspend: the youngest of the
+     * lowest priority processes that have pages in memory and are ready to
+     * run or sleeping. Realtime processes are never suspended, nor processes
+     * waiting on anything but a timer, nor the last process with pages in
+     * memory that isn't suspended.
+     * @return The process, {@code null} if there is none.
+     */
+    public PCB GetProcessToSuspend() {
+        int withMemory = 0;
+        for (PCB pcb : pcbByPID.values())
+            if (pcb.getResidentPages() > 0 && !pcb.isSuspended())
+                withMemory++;
+        if (withMemory < 2)
+            return null;
+        PCB victim = null;
+        for (PCB pcb : pcbByPID.values()) {
+            if (pcb.getResidentPages() == 0 || pcb.isSuspended() || pcb.getPriority() == OS.PriorityType.realtime)
+                continue;
+            boolean ready = interactiveQueue.contains(pcb) || backgroundQueue.contains(pcb);
+            boolean sleeping = sleepingQueue.contains(pcb) && !pcb.isAwaitingMessage();
+            if (!ready && !sleeping)
+                continue;
+            if (victim == null || pcb.getPriority().compareTo(victim.getPriority()) > 0
+                    || (pcb.getPriority() == victim.getPriority() && pcb.pid > victim.pid))
+                victim = pcb;
+        }
+        return victim;
+    }
+
+    /**
+     * Keeps a process from running until {@code Resume} is called. A process
+     * ready to run is taken off the process queues, a sleeping one when it
+     * wakes.
+     */
+    public void Suspend(PCB pcb) {
+        pcb.setSuspended(true);
+        suspended.add(pcb);
+        if (interactiveQueue.remove(pcb) || backgroundQueue.remove(pcb))
+            suspendedReady.add(pcb);
+    }
+
+    /**
+     * Lets a suspended process run again.
+     */
+    public void Resume(PCB pcb) {
+        pcb.setSuspended(false);
+        suspended.remove(pcb);
+        if (suspendedReady.remove(pcb))
+            switch (pcb.getPriority()) {
+                case realtime    -> realtimeQueue.add(pcb);
+                case interactive -> interactiveQueue.add(pcb);
+                case background  -> backgroundQueue.add(pcb);
+            }
+    }
+
+    /**
+     * Returns the process suspended longest, {@code null} if none is.
+     */
+    public PCB GetSuspended() {
+        return suspended.peek();
+    }
+
+    public int GetSuspendedCount() {
+        return suspended.size();
+    }
+
+    /**
+     * Returns every process, in no particular order.
+     */
+    public Collection<PCB> GetProcesses() {
+        return pcbByPID.values();
     }
 
     /**
@@ -241,28 +601,22 @@ public class Scheduler {
     }
 
     /**
-     * Returns a random process from a randomly selected queue contained within
-     * this scheduler.
+     * Returns the process with the given PID, {@code null} if there is none.
+     */
+    public PCB GetProcess(int pid) {
+        return pcbByPID.get(pid);
+    }
+
+    /**
+     * Returns a random process, whether running, ready, sleeping, or waiting
+     * on a message or system call.
      * @return A random process.
      */
     public PCB GetRandomProcess() {
-        int realtimeSize = realtimeQueue.size();
-        int interactiveSize = interactiveQueue.size();
-        int backgroundSize = backgroundQueue.size();
-        int sleepingSize = sleepingQueue.size();
-        // +1 to cover the chance we may pick the currently running process
-        int randint = rng.nextInt(realtimeSize + interactiveSize + backgroundSize + sleepingSize + 1);
-        if (randint < realtimeSize)
-            return realtimeQueue.get(randint);
-        randint -= realtimeSize;
-        if (randint < interactiveSize)
-            return interactiveQueue.get(randint);
-        randint -= interactiveSize;
-        if (randint < backgroundSize)
-            return backgroundQueue.get(randint);
-        randint -= backgroundSize;
-        if (randint < sleepingSize)
-            return (PCB) sleepingQueue.toArray()[randint];
+        int randint = rng.nextInt(pcbByPID.size());
+        for (PCB pcb : pcbByPID.values())
+            if (randint-- == 0)
+                return pcb;
         return currentlyRunning;
     }
 
@@ -0,0 +1,154 @@
+import java.util.Arrays;
+
+/**
+ * Bookkeeping for same-page merging, see {@code OS.MergePages}. Records which
+ * pages (process and virtual page address) share each shared frame, so a
+ * shared frame can still be swapped out, and its sharers split off again when
+ * they write. Also indexes the frames seen during a scan by checksum, to find
+ * identical ones.
+ * <p>
+ * Everything is kept in primitive arrays indexed by physical page address, so
+ * scanning and merging don't create garbage.
+ */
+public class SharedFrames {
+
+    /** Sharers of each frame, each packed as PID in the high half and virtual
+     * page address in the low half. {@code null} until a frame is first
+     * shared. */
+    private final long[][] sharers;
+    private final int[] counts;
+    private int sharedFrames = 0, totalSharers = 0;
+    /** Open addressing table of the frames seen during the current scan, by
+     * checksum. */
+    private final long[] candidateChecksums;
+    private final int[] candidateFrames;
+
+    /**
+     * @param frames Number of physical pages.
+     */
+    public SharedFrames(int frames) {
+        sharers = new long[frames][];
+        counts = new int[frames];
+        candidateChecksums = new long[frames * 2];
+        candidateFrames = new int[frames * 2];
+        Arrays.fill(candidateFrames, -1);
+    }
+
+    /**
+     * Records that the page {@code virtualPage} of process {@code pid} is in
+     * the shared frame {@code physicalPage}.
+     */
+    public void add(int physicalPage, int pid, int virtualPage) {
+        long[] list = sharers[physicalPage];
+        if (list == null)
+            list = sharers[physicalPage] = new long[4];
+        else if (counts[physicalPage] == list.length)
+            list = sharers[physicalPage] = Arrays.copyOf(list, list.length * 2);
+        if (counts[physicalPage] == 0)
+            sharedFrames++;
+        list[counts[physicalPage]++] = (long) pid << 32 | virtualPage;
+        totalSharers++;
+    }
+
+    /**
+     * Records that a page no longer is in the shared frame
+     * {@code physicalPage}.
+     */
+    public void remove(int physicalPage, int pid, int virtualPage) {
+        long[] list = sharers[physicalPage];
+        long sharer = (long) pid << 32 | virtualPage;
+        for (int i = 0; i < counts[physicalPage]; i++)
+            if (list[i] == sharer) {
+                list[i] = list[--counts[physicalPage]];
+                totalSharers--;
+                if (counts[physicalPage] == 0)
+                    sharedFrames--;
+                return;
+            }
+    }
+
+    /**
+     * Forgets every sharer of {@code physicalPage}.
+     */
+    public void clear(int physicalPage) {
+        totalSharers -= counts[physicalPage];
+        if (counts[physicalPage] > 0)
+            sharedFrames--;
+        counts[physicalPage] = 0;
+    }
+
+    /**
+     * Number of pages in the frame {@code physicalPage}.
+     */
+    public int count(int physicalPage) {
+        return counts[physicalPage];
+    }
+
+    public int getPID(int physicalPage, int index) {
+        return (int) (sharers[physicalPage][index] >>> 32);
+    }
+
+    public int getVirtualPage(int physicalPage, int index) {
+        return (int) sharers[physicalPage][index];
+    }
+
+    /**
+     * Number of frames shared by more than one page.
+     */
+    public int getSharedFrames() {
+        return sharedFrames;
+    }
+
+    /**
+     * Number of frames that merging saves, one less than the number of pages
+     * in each shared frame.
+     */
+    public int getFramesSaved() {
+        return totalSharers - sharedFrames;
+    }
+
+    /**
+     * Looks up a frame seen earlier in the scan with the same checksum,
+     * recording {@code physicalPage} under it if there is none.
+     * @return The frame found, -1 if there was none.
+     */
+    public int findCandidate(long checksum, int physicalPage) {
+        int mask = candidateChecksums.length - 1;
+        int i = (int) (checksum ^ checksum >>> 32) * 0x9E3779B9 & mask;
+        for (; candidateFrames[i] != -1; i = (i + 1) & mask)
+            if (candidateChecksums[i] == checksum)
+                return candidateFrames[i];
+        candidateChecksums[i] = checksum;
+        candidateFrames[i] = physicalPage;
+        return -1;
+    }
+
+    /**
+     * Replaces the frame recorded under {@code checksum}, used when the one
+     * found turned out not to be identical after all.
+     */
+    public void replaceCandidate(long checksum, int physicalPage) {
+        int mask = candidateChecksums.length - 1;
+        int i = (int) (checksum ^ checksum >>> 32) * 0x9E3779B9 & mask;
+        while (candidateChecksums[i] != checksum || candidateFrames[i] == -1)
+            i = (i + 1) & mask;
+        candidateFrames[i] = physicalPage;
+    }
+
+    /**
+     * Forgets the frames seen, at the start of a new scan.
+     */
+    public void clearCandidates() {
+        Arrays.fill(candidateFrames, -1);
+    }
+
+    /**
+     * 64-bit FNV-1a hash of a page of memory.
+     */
+    public static long checksum(byte[] memory, int offset) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = offset; i < offset + Hardware.PAGE_SIZE; i++)
+            hash = (hash ^ (memory[i] & 0xFF)) * 0x100000001B3L;
+        return hash;
+    }
+}
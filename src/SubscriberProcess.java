@@ -0,0 +1,23 @@
+import java.nio.charset.StandardCharsets;
+
+public class SubscriberProcess extends UserlandProcess {
+
+    /** Messages received between reports of the mailbox and channel stats. */
+    private static final int REPORT_EVERY = 10;
+
+    @Override
+    public void main() {
+        OS.Subscribe("telemetry");
+        int received = 0;
+        while (true) {
+            KernelMessage msg = OS.WaitForMessage();
+            if (!msg.isPublished())
+                continue;
+            println(String.format("Subscriber (pid: %d) received \"%s\"", OS.GetPID(),
+                    StandardCharsets.UTF_8.decode(msg.getPayload())));
+            if (++received % REPORT_EVERY == 0)
+                println(String.format("Subscriber (pid: %d) mailbox %s, channel %s", OS.GetPID(),
+                        OS.GetMailboxStats(OS.GetPID()), OS.GetChannelStats("telemetry")));
+        }
+    }
+}
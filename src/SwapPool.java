@@ -0,0 +1,179 @@
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compressed tier of swap, kept in kernel memory in front of the page file.
+ * Pages are compressed on their way out of memory and decompressed on their
+ * way back in, so a page that compresses well costs neither a page file
+ * write nor read. The pool holds at most {@code capacity} compressed bytes;
+ * the kernel makes room by moving its oldest pages on to the page file.
+ */
+public class SwapPool {
+
+    /** Pages that don't compress to this many bytes or fewer are not worth
+     * keeping in the pool. */
+    private static final int MAX_COMPRESSED = Hardware.PAGE_SIZE * 3 / 4;
+    /** Number of bytes at the start of a page looked at to guess whether it
+     * is worth compressing at all. */
+    private static final int SAMPLE = 128;
+    /** Pages with more distinct byte values than this in their sample are
+     * taken to be random, and not compressed. Random bytes have about 100. */
+    private static final int MAX_SAMPLE_VALUES = 64;
+
+    private final HandleTable<Entry> entries = new HandleTable<>();
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final Inflater inflater = new Inflater();
+    private final byte[] compressBuffer = new byte[MAX_COMPRESSED];
+    private final boolean[] seen = new boolean[256];
+    private int capacity;
+    private int size = 0;
+    /** Entries from oldest to newest. */
+    private Entry oldest, newest;
+
+    /**
+     * A compressed page.
+     */
+    private static class Entry {
+        int handle;
+        final int pid;
+        final int virtualPage;
+        final byte[] data;
+        Entry older, newer;
+
+        Entry(int pid, int virtualPage, byte[] data) {
+            this.pid = pid;
+            this.virtualPage = virtualPage;
+            this.data = data;
+        }
+    }
+
+    /**
+     * @param capacity Most compressed bytes held, 0 to turn the pool off.
+     */
+    public SwapPool(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Changes the pool's capacity. If it shrinks below what is held, the pool
+     * stays over capacity until the kernel makes room.
+     */
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Whether the pool holds more than its capacity.
+     */
+    public boolean isOverCapacity() {
+        return size > capacity;
+    }
+
+    /**
+     * Compresses a page into the pool.
+     * @param memory Memory holding the page.
+     * @param offset Offset of the page in {@code memory}.
+     * @param pid The page's owner.
+     * @param virtualPage The page's virtual page address in its owner.
+     * @return The page's handle, -1 if the pool is off or the page doesn't
+     * compress well enough.
+     */
+    public int store(byte[] memory, int offset, int pid, int virtualPage) {
+        if (capacity == 0 || !worthCompressing(memory, offset))
+            return -1;
+        deflater.reset();
+        deflater.setInput(memory, offset, Hardware.PAGE_SIZE);
+        deflater.finish();
+        int length = deflater.deflate(compressBuffer);
+        if (!deflater.finished())
+            return -1;
+        Entry entry = new Entry(pid, virtualPage, Arrays.copyOf(compressBuffer, length));
+        entry.handle = entries.add(entry);
+        entry.older = newest;
+        if (newest != null)
+            newest.newer = entry;
+        else
+            oldest = entry;
+        newest = entry;
+        size += length;
+        return entry.handle;
+    }
+
+    /**
+     * Guesses from a sample whether a page will compress well, much faster
+     * than finding out by compressing it.
+     */
+    private boolean worthCompressing(byte[] memory, int offset) {
+        Arrays.fill(seen, false);
+        int values = 0;
+        for (int i = offset; i < offset + SAMPLE; i++)
+            if (!seen[memory[i] & 0xFF]) {
+                seen[memory[i] & 0xFF] = true;
+                values++;
+            }
+        return values <= MAX_SAMPLE_VALUES;
+    }
+
+    /**
+     * Decompresses a page, and removes it from the pool.
+     * @param handle The page's handle.
+     * @param memory Memory to decompress the page into.
+     * @param offset Offset in {@code memory} to decompress it to.
+     */
+    public void load(int handle, byte[] memory, int offset) {
+        Entry entry = entries.get(handle);
+        inflater.reset();
+        inflater.setInput(entry.data);
+        try {
+            inflater.inflate(memory, offset, Hardware.PAGE_SIZE);
+        } catch (DataFormatException e) {
+            throw new RuntimeException(e);
+        }
+        remove(handle);
+    }
+
+    /**
+     * Removes a page from the pool without decompressing it.
+     */
+    public void remove(int handle) {
+        Entry entry = entries.remove(handle);
+        if (entry.older != null)
+            entry.older.newer = entry.newer;
+        else
+            oldest = entry.newer;
+        if (entry.newer != null)
+            entry.newer.older = entry.older;
+        else
+            newest = entry.older;
+        size -= entry.data.length;
+    }
+
+    /**
+     * Returns the handle of the page held the longest, -1 if the pool is
+     * empty.
+     */
+    public int oldest() {
+        return oldest == null ? -1 : oldest.handle;
+    }
+
+    public int getOwner(int handle) {
+        return entries.get(handle).pid;
+    }
+
+    public int getVirtualPage(int handle) {
+        return entries.get(handle).virtualPage;
+    }
+
+    /**
+     * Number of bytes a page takes in the pool.
+     */
+    public int getCompressedSize(int handle) {
+        return entries.get(handle).data.length;
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Writes a buffer twice the size of physical memory, where the first half is
+ * mostly zeros, the next quarter holds a short repeating pattern and the last
+ * quarter is random, then scans it twice, first with the swap pool off and
+ * then with it on. Reports the pool's compression ratio and hit rate, and the average
+ * fault latency of each tier.
+ */
+public class SwapPoolBenchmarkProcess extends UserlandProcess {
+
+    private static final int SIZE = 2 * Hardware.MEM_SIZE;
+    private static final int SCANS = 2;
+    private static final int POOL_SIZE = 256 * 1024;
+
+    @Override
+    public void main() {
+        run(0);
+        run(POOL_SIZE);
+    }
+
+    private void run(int poolSize) {
+        OS.SetSwapPoolSize(poolSize);
+        int p = OS.AllocateMemory(SIZE, false);
+        if (p == -1)
+            throw new RuntimeException("Memory allocation failed");
+        for (int i = 0; i < SIZE; i++)
+            Hardware.Write(p + i, valueAt(i));
+        MemoryStats before = OS.GetMemoryStats();
+        long start = System.nanoTime();
+        for (int scan = 0; scan < SCANS; scan++)
+            for (int i = 0; i < SIZE; i++)
+                if (Hardware.Read(p + i) != valueAt(i))
+                    throw new RuntimeException("Memory doesn't match what was written");
+        long time = System.nanoTime() - start;
+        MemoryStats scan = OS.GetMemoryStats().since(before);
+        OS.FreeMemory(p, SIZE);
+
+        println(String.format("pool %3d KB: %d faults (%d from pool at %.1f us, %d from page file at %.1f us), hit rate %.2f, compression %.1fx, %d swap reads, %d swap writes; %.1f ms",
+                poolSize / 1024, scan.pageFaults, scan.poolFaults, scan.poolFaultMicros(), scan.pageFileFaults, scan.pageFileFaultMicros(),
+                scan.poolHitRate(), scan.compressionRatio(), scan.swapReads, scan.swapWrites, time / 1e6));
+    }
+
+    /**
+     * The byte written at offset {@code i} of the buffer.
+     */
+    private static byte valueAt(int i) {
+        int offset = i % Hardware.PAGE_SIZE;
+        if (i < SIZE / 2)
+            return offset == 0 ? (byte) (i / Hardware.PAGE_SIZE) : 0;
+        if (i < SIZE / 4 * 3)
+            return (byte) (offset % 16);
+        int x = i * 0x9E3779B9;
+        return (byte) ((x ^ (x >>> 15)) * 0x85EBCA6B >>> 24);
+    }
+}
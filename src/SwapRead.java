@@ -0,0 +1,73 @@
+/**
+ * A read of swapped out small pages from the page file: the page faulted on,
+ * and the neighbours brought in along with it. The kernel reads the pages'
+ * slots into {@code buffer}, either on its own thread or on an I/O worker
+ * while the process that faulted waits (see {@code OS.SetNonBlockingFaults}),
+ * and then puts the pages into memory.
+ * <p>
+ * Reads are reused, along with their buffers, so a page fault doesn't
+ * allocate one. {@code plan} sets up each new read.
+ */
+public class SwapRead {
+
+    /** Process the pages belong to. */
+    public PCB process;
+    /** Virtual page address of the page faulted on, and its entry. */
+    public int virtualPage;
+    public long entry;
+    /** Virtual page addresses of the first and last page brought in. Those
+     * not in the page file are in the swap pool. */
+    public int first, last;
+    /** First and last page file slot read, -1 if none are. */
+    public int lowSlot, highSlot;
+    /** Buffer the slots are read into. */
+    public final byte[] buffer;
+    private volatile boolean done = false;
+
+    /**
+     * @param pages Most pages read at once.
+     */
+    public SwapRead(int pages) {
+        buffer = new byte[pages * Hardware.PAGE_SIZE];
+    }
+
+    /**
+     * Sets up a new read of the given pages, which hasn't been done yet.
+     */
+    public void plan(PCB process, int virtualPage, long entry, int first, int last, int lowSlot, int highSlot) {
+        this.process = process;
+        this.virtualPage = virtualPage;
+        this.entry = entry;
+        this.first = first;
+        this.last = last;
+        this.lowSlot = lowSlot;
+        this.highSlot = highSlot;
+        done = false;
+    }
+
+    /**
+     * Number of bytes read from the page file.
+     */
+    public int bytes() {
+        return lowSlot == -1 ? 0 : (highSlot - lowSlot + 1) * Hardware.PAGE_SIZE;
+    }
+
+    /**
+     * Whether page file slot {@code slot} is among those read.
+     */
+    public boolean covers(int slot) {
+        return lowSlot != -1 && slot >= lowSlot && slot <= highSlot;
+    }
+
+    /**
+     * Marks the slots as read into {@code buffer}, from whichever thread read
+     * them.
+     */
+    public void complete() {
+        done = true;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+}
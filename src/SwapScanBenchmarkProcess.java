@@ -0,0 +1,41 @@
+/**
+ * Writes a buffer twice the size of physical memory, then scans it from start
+ * to end twice, first swapping pages one at a time and then in clusters with
+ * read-ahead. Reports page faults per MB scanned and the number of page file
+ * reads and writes.
+ */
+public class SwapScanBenchmarkProcess extends UserlandProcess {
+
+    private static final int SIZE = 2 * Hardware.MEM_SIZE;
+    private static final int SCANS = 2;
+
+    @Override
+    public void main() {
+        run(1);
+        run(16);
+    }
+
+    private void run(int cluster) {
+        OS.SetSwapCluster(cluster);
+        int p = OS.AllocateMemory(SIZE, false);
+        if (p == -1)
+            throw new RuntimeException("Memory allocation failed");
+        MemoryStats before = OS.GetMemoryStats();
+        long start = System.nanoTime();
+        for (int i = 0; i < SIZE; i++)
+            Hardware.Write(p + i, (byte) (i * 31));
+        MemoryStats write = OS.GetMemoryStats().since(before);
+        before = OS.GetMemoryStats();
+        for (int scan = 0; scan < SCANS; scan++)
+            for (int i = 0; i < SIZE; i++)
+                if (Hardware.Read(p + i) != (byte) (i * 31))
+                    throw new RuntimeException("Memory doesn't match what was written");
+        MemoryStats read = OS.GetMemoryStats().since(before);
+        long time = System.nanoTime() - start;
+        OS.FreeMemory(p, SIZE);
+
+        double megabytes = (double) SIZE * SCANS / (1024 * 1024);
+        println(String.format("cluster %2d: write %d swap writes; scan %.1f faults/MB, %d swap reads (%d pages read ahead), %d swap writes; %.1f ms",
+                cluster, write.swapWrites, read.pageFaults / megabytes, read.swapReads, read.pagesReadAhead, read.swapWrites, time / 1e6));
+    }
+}
@@ -0,0 +1,43 @@
+import java.util.Random;
+
+/**
+ * Worker of {@code ThrashingBenchmarkProcess}. Allocates 100 KB, like
+ * {@code Piggy}, fills it with random bytes, so it neither merges nor
+ * compresses, sweeps over all of it a number of times, then tells the
+ * benchmark it is done.
+ */
+public class SweepProcess extends UserlandProcess {
+
+    public static final int SIZE = 100 * 1024;
+    private final int benchmarkPID;
+    private final int sweeps;
+
+    public SweepProcess(int benchmarkPID, int sweeps) {
+        this.benchmarkPID = benchmarkPID;
+        this.sweeps = sweeps;
+    }
+
+    @Override
+    public void main() {
+        int p = OS.AllocateMemory(SIZE, false);
+        if (p == -1)
+            throw new RuntimeException("Memory allocation failed");
+        long seed = System.nanoTime();
+        Random random = new Random(seed);
+        for (int i = 0; i < SIZE; i++) {
+            Hardware.Write(p + i, (byte) random.nextInt(256));
+            cooperate();
+        }
+        for (int sweep = 0; sweep < sweeps; sweep++)
+            for (int i = 0; i < SIZE; i++) {
+                Hardware.Write(p + i, (byte) (Hardware.Read(p + i) + 1));
+                cooperate();
+            }
+        random = new Random(seed);
+        for (int i = 0; i < SIZE; i++)
+            if (Hardware.Read(p + i) != (byte) (random.nextInt(256) + sweeps))
+                throw new RuntimeException("Memory doesn't match what was written");
+        OS.FreeMemory(p, SIZE);
+        OS.SendMessage(new KernelMessage(benchmarkPID, 0, new byte[0]));
+    }
+}
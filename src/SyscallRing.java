@@ -0,0 +1,165 @@
+/**
+ * A pair of fixed-size rings a process uses to hand the kernel many system
+ * calls at once. Calls are queued on the submission ring with the
+ * {@code prep} methods, then {@code OS.SubmitBatch} enters the kernel once
+ * to run all of them. Each call's result is placed on the completion ring,
+ * tagged with the {@code userData} it was submitted with.
+ * <p>
+ * Calls in a batch never block: a read that would wait completes with
+ * {@code null}, a write completes with the number of bytes that fit, and a
+ * message to a full mailbox is dropped.
+ */
+public class SyscallRing {
+
+    // submission ring
+    private final OS.CallType[] ops;
+    private final Object[] firstArgs;
+    private final Object[] secondArgs;
+    private final long[] submissionUserData;
+    private int submissionHead = 0;
+    private int submissionSize = 0;
+
+    // completion ring
+    private final Object[] results;
+    private final long[] completionUserData;
+    private int completionHead = 0;
+    private int completionSize = 0;
+
+    /**
+     * @param entries Number of entries in each ring.
+     */
+    public SyscallRing(int entries) {
+        if (entries < 1)
+            throw new IllegalArgumentException("Ring size must be positive");
+        ops = new OS.CallType[entries];
+        firstArgs = new Object[entries];
+        secondArgs = new Object[entries];
+        submissionUserData = new long[entries];
+        results = new Object[entries];
+        completionUserData = new long[entries];
+    }
+
+    public int capacity() {
+        return ops.length;
+    }
+
+    // Userland side
+
+    /** Queues {@code OS.Open(s)}. Completes with the new descriptor. */
+    public boolean prepOpen(String s, long userData) {
+        return submit(OS.CallType.Open, s, null, userData);
+    }
+
+    /** Queues {@code OS.Close(id)}. Completes with {@code null}. */
+    public boolean prepClose(int id, long userData) {
+        return submit(OS.CallType.Close, id, null, userData);
+    }
+
+    /** Queues {@code OS.Read(id, size)}. Completes with the bytes read. */
+    public boolean prepRead(int id, int size, long userData) {
+        return submit(OS.CallType.Read, id, size, userData);
+    }
+
+    /** Queues {@code OS.Seek(id, to)}. Completes with {@code null}. */
+    public boolean prepSeek(int id, int to, long userData) {
+        return submit(OS.CallType.Seek, id, to, userData);
+    }
+
+    /** Queues {@code OS.Write(id, data)}. Completes with the bytes written. */
+    public boolean prepWrite(int id, byte[] data, long userData) {
+        return submit(OS.CallType.Write, id, data, userData);
+    }
+
+    /**
+     * Queues {@code OS.SendMessage(km, false)}. Completes with whether the
+     * message was delivered.
+     */
+    public boolean prepSendMessage(KernelMessage km, long userData) {
+        return submit(OS.CallType.SendMessage, km, null, userData);
+    }
+
+    /**
+     * Adds an entry to the submission ring.
+     * @return {@code false} if the submission ring is full.
+     */
+    private boolean submit(OS.CallType op, Object first, Object second, long userData) {
+        if (submissionSize == ops.length)
+            return false;
+        int tail = (submissionHead + submissionSize) % ops.length;
+        ops[tail] = op;
+        firstArgs[tail] = first;
+        secondArgs[tail] = second;
+        submissionUserData[tail] = userData;
+        submissionSize++;
+        return true;
+    }
+
+    public boolean hasCompletion() {
+        return completionSize > 0;
+    }
+
+    /** The {@code userData} of the oldest completion. */
+    public long completionUserData() {
+        return completionUserData[completionHead];
+    }
+
+    /** The result of the oldest completion. */
+    public Object completionResult() {
+        return results[completionHead];
+    }
+
+    /** Removes the oldest completion from the completion ring. */
+    public void consumeCompletion() {
+        results[completionHead] = null;
+        completionHead = (completionHead + 1) % results.length;
+        completionSize--;
+    }
+
+    // Kernel side
+
+    public boolean hasSubmission() {
+        return submissionSize > 0;
+    }
+
+    public OS.CallType submissionOp() {
+        return ops[submissionHead];
+    }
+
+    public Object submissionFirstArg() {
+        return firstArgs[submissionHead];
+    }
+
+    public Object submissionSecondArg() {
+        return secondArgs[submissionHead];
+    }
+
+    public long submissionUserData() {
+        return submissionUserData[submissionHead];
+    }
+
+    /** Removes the oldest submission from the submission ring. */
+    public void consumeSubmission() {
+        firstArgs[submissionHead] = null;
+        secondArgs[submissionHead] = null;
+        submissionHead = (submissionHead + 1) % ops.length;
+        submissionSize--;
+    }
+
+    public boolean isCompletionRingFull() {
+        return completionSize == results.length;
+    }
+
+    /**
+     * Adds an entry to the completion ring.
+     * @return {@code false} if the completion ring is full.
+     */
+    public boolean complete(long userData, Object result) {
+        if (completionSize == results.length)
+            return false;
+        int tail = (completionHead + completionSize) % results.length;
+        results[tail] = result;
+        completionUserData[tail] = userData;
+        completionSize++;
+        return true;
+    }
+}
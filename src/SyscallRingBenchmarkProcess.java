@@ -0,0 +1,50 @@
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Measures small-write throughput in the style of {@code FSTestProcess},
+ * first with one {@code OS.Write} per line, then through a
+ * {@code SyscallRing} at increasing batch sizes.
+ */
+public class SyscallRingBenchmarkProcess extends UserlandProcess {
+
+    /** Lines written by each run. */
+    private static final int LINES = 20000;
+    private static final int[] BATCH_SIZES = {1, 4, 16, 64, 256};
+
+    @Override
+    public void main() {
+        byte[] line = "icsi412,operating systems,09:00,10:00\n".getBytes(StandardCharsets.UTF_8);
+        int fd = OS.Open("file ringbench.csv");
+
+        long start = System.nanoTime();
+        for (int i = 0; i < LINES; i++)
+            OS.Write(fd, line);
+        report("unbatched", System.nanoTime() - start);
+
+        for (int batchSize : BATCH_SIZES) {
+            SyscallRing ring = new SyscallRing(batchSize);
+            OS.Seek(fd, 0);
+            start = System.nanoTime();
+            int written = 0;
+            while (written < LINES) {
+                int queued = 0;
+                while (queued < batchSize && written + queued < LINES)
+                    ring.prepWrite(fd, line, written + queued++);
+                OS.SubmitBatch(ring);
+                while (ring.hasCompletion()) {
+                    if ((int)ring.completionResult() != line.length)
+                        throw new RuntimeException(String.format("Write %d failed", ring.completionUserData()));
+                    ring.consumeCompletion();
+                }
+                written += queued;
+            }
+            report(String.format("batch %d", batchSize), System.nanoTime() - start);
+        }
+        OS.Close(fd);
+    }
+
+    private void report(String name, long nanos) {
+        double seconds = nanos / 1e9;
+        println(String.format("%-10s %d writes in %.3f s, %.0f calls/s", name, LINES, seconds, LINES / seconds));
+    }
+}
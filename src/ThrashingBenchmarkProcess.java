@@ -0,0 +1,31 @@
+/**
+ * Runs more and more {@code SweepProcess}es at once, each sweeping over its
+ * own 100 KB, with load control off and then on, until together they want
+ * about twice the machine's memory. Reports throughput, in KB swept per
+ * second across all processes, and the page faults and suspensions it took.
+ */
+public class ThrashingBenchmarkProcess extends UserlandProcess {
+
+    private static final int[] PROCESS_COUNTS = {5, 10, 15, 20};
+    private static final int SWEEPS = 500;
+
+    @Override
+    public void main() {
+        for (int count : PROCESS_COUNTS)
+            for (boolean loadControl : new boolean[] {false, true}) {
+                OS.SetLoadControl(loadControl);
+                MemoryStats before = OS.GetMemoryStats();
+                long start = System.nanoTime();
+                for (int i = 0; i < count; i++)
+                    OS.CreateProcess(new SweepProcess(OS.GetPID(), SWEEPS));
+                for (int i = 0; i < count; i++)
+                    OS.WaitForMessage();
+                long time = System.nanoTime() - start;
+                MemoryStats run = OS.GetMemoryStats().since(before);
+                double kilobytes = (double) count * SWEEPS * SweepProcess.SIZE / 1024;
+                println(String.format("%2d processes (%4d KB), load control %-3s: %6.0f KB/s, %6d page faults, %2d suspensions; %.1f s",
+                        count, count * SweepProcess.SIZE / 1024, loadControl ? "on" : "off", kilobytes / (time / 1e9), run.pageFaults, run.suspensions, time / 1e9));
+            }
+        OS.SetLoadControl(true);
+    }
+}
@@ -1,3 +1,18 @@
+import java.nio.charset.StandardCharsets;
+
 public abstract class UserlandProcess extends Process {
 
+    /** Descriptor of this process' console, opened on first use. */
+    private int console = -1;
+
+    /**
+     * Prints a line through the console device, which buffers it and writes it
+     * out on its own thread, rather than writing to {@code System.out}
+     * directly.
+     */
+    protected void println(String line) {
+        if (console == -1)
+            console = OS.Open("console");
+        OS.Write(console, (line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+    }
 }
@@ -1,96 +1,286 @@
+import java.util.HashMap;
 
-public class VirtualFileSystem implements Device {
+public class VirtualFileSystem implements BlockingDevice {
 
-    /** Number of possible id to device associations that can be made. */
-    private static final int SIZE = 16;
+    /** Devices by the prefix that routes {@code Open} calls to them. */
+    private final HashMap<String, Device> mounts = new HashMap<>();
+    private final HandleTable<Handle> handles = new HandleTable<>();
 
-    private final Device[] devices = new Device[SIZE];
-    private final int[] ids = new int[SIZE];
+    /**
+     * An open device handle. Access to each is serialized, as asynchronous
+     * reads and writes run on kernel I/O workers alongside the kernel.
+     */
+    private static class Handle {
+        final Device device;
+        final int id;
+        /** Set once closed, for operations that were waiting on the handle. */
+        boolean closed = false;
+        /** Asynchronous requests holding the handle open, see {@code Hold}. */
+        int holds = 0;
+        /** Set once {@code Close} is called while the handle is held. */
+        boolean closing = false;
+
+        Handle(Device device, int id) {
+            this.device = device;
+            this.id = id;
+        }
+    }
 
     public VirtualFileSystem() {
-        for (int i = 0; i < SIZE; i++)
-            ids[i] = -1;
+        Mount("random", new RandomDevice());
+        Mount("file", new FakeFileSystem());
+        Mount("disk", new ImageFileSystem());
+        Mount("pipe", new PipeDevice());
+        Mount("console", new ConsoleDevice());
+    }
+
+    /**
+     * Routes {@code Open} calls starting with {@code prefix} to {@code device}.
+     * The rest of the string after a space is passed on to the device's
+     * {@code Open}, {@code null} if there is none.
+     */
+    public final void Mount(String prefix, Device device) {
+        mounts.put(prefix, device);
     }
 
     @Override
     public int Open(String s) {
-        int vfsIndex = -1;
-        for (int i = 0; i < ids.length; i++)
-            if (ids[i] == -1) {
-                vfsIndex = i;
-                break;
-            }
-        if (vfsIndex == -1)
+        int space = s.indexOf(' ');
+        Device device = mounts.get(space == -1 ? s : s.substring(0, space));
+        if (device == null)
             return -1;
-
-        Device device = null;
-        int deviceID = -1;
-
-        if (s.startsWith("random")) {
-            for (Device dev : devices)
-                if (dev instanceof RandomDevice) {
-                    device = dev;
-                    break;
-                }
-            if (device == null)
-                device = new RandomDevice();
-            if (s.length() > 7)
-                deviceID = device.Open(s.substring(7));
-            else
-                deviceID = device.Open(null);
-        } else if (s.startsWith("file")) {
-            for (Device dev : devices)
-                if (dev instanceof FakeFileSystem) {
-                    device = dev;
-                    break;
-                }
-            if (device == null)
-                device = new FakeFileSystem();
-            deviceID = device.Open(s.substring(5));
-        }
-
-        if (deviceID != -1) {
-            ids[vfsIndex] = deviceID;
-            devices[vfsIndex] = device;
-            return vfsIndex;
-        }
-        return -1;
+        int deviceID = device.Open(space == -1 ? null : s.substring(space + 1));
+        if (deviceID == -1)
+            return -1;
+        synchronized (handles) {
+            return handles.add(new Handle(device, deviceID));
+        }
     }
 
+    /**
+     * Closes the handle. If asynchronous requests still hold it, the device is
+     * closed and the handle freed for reuse once the last one releases it.
+     */
     @Override
     public void Close(int id) {
-        if (id < 0 || id >= ids.length)
+        Handle handle = Lookup(id);
+        if (handle == null)
             return;
-        if (devices[id] == null)
+        synchronized (handle) {
+            if (handle.closing)
+                return;
+            handle.closing = true;
+            if (handle.holds > 0)
+                return;
+        }
+        Free(id, handle);
+    }
+
+    /**
+     * Keeps the handle, and the device behind it, open until {@code Release}
+     * is called, even if it is closed in the meantime. Taken by the kernel
+     * when it hands a request on the handle to an I/O worker, so the handle
+     * can't be freed and given to another file before the request runs.
+     * @return {@code false} if there is no such handle.
+     */
+    public boolean Hold(int id) {
+        Handle handle = Lookup(id);
+        if (handle == null)
+            return false;
+        synchronized (handle) {
+            if (handle.closing)
+                return false;
+            handle.holds++;
+            return true;
+        }
+    }
+
+    /**
+     * Releases a hold taken by {@code Hold}, finishing a close that was
+     * waiting for it. May be called from any thread.
+     */
+    public void Release(int id) {
+        Handle handle = Lookup(id);
+        if (handle == null)
             return;
-        devices[id].Close(id);
-        ids[id] = -1;
+        synchronized (handle) {
+            if (--handle.holds > 0 || !handle.closing)
+                return;
+        }
+        Free(id, handle);
+    }
+
+    private void Free(int id, Handle handle) {
+        synchronized (handle) {
+            handle.device.Close(handle.id);
+            handle.closed = true;
+        }
+        synchronized (handles) {
+            if (handles.get(id) == handle)
+                handles.remove(id);
+        }
+    }
+
+    /**
+     * Looks a handle up. The table is only touched under its lock, as the
+     * last {@code Release} of a closed handle frees it from an I/O worker.
+     * Callers lock the handle they get and check it hasn't been closed since.
+     * @return {@code null} if there is no such handle.
+     */
+    private Handle Lookup(int id) {
+        synchronized (handles) {
+            return handles.get(id);
+        }
     }
 
     @Override
     public byte[] Read(int id, int size) {
-        if (id < 0 || id >= ids.length)
+        Handle handle = Lookup(id);
+        if (handle == null)
             return null;
-        if (devices[id] == null)
-            return null;
-        return devices[id].Read(id, size);
+        synchronized (handle) {
+            if (handle.closed)
+                return null;
+            return handle.device.Read(handle.id, size);
+        }
     }
 
     @Override
     public void Seek(int id, int to) {
-        if (id < 0 || id >= ids.length)
+        Handle handle = Lookup(id);
+        if (handle == null)
             return;
-        if (devices[id] == null)
-            return;
-        devices[id].Seek(id, to);
+        synchronized (handle) {
+            if (handle.closed)
+                return;
+            handle.device.Seek(handle.id, to);
+        }
     }
 
     @Override
     public int Write(int id, byte[] data) {
-        if (id < 0 || id >= ids.length)
+        Handle handle = Lookup(id);
+        if (handle == null)
             return -1;
-        if (devices[id] == null)
+        synchronized (handle) {
+            if (handle.closed)
+                return -1;
+            return handle.device.Write(handle.id, data);
+        }
+    }
+
+    @Override
+    public int ReadInto(int id, byte[] buffer, int offset, int length) {
+        Handle handle = Lookup(id);
+        if (handle == null)
             return -1;
-        return devices[id].Write(id, data);
+        synchronized (handle) {
+            if (handle.closed)
+                return -1;
+            return handle.device.ReadInto(handle.id, buffer, offset, length);
+        }
+    }
+
+    @Override
+    public int WriteFrom(int id, byte[] buffer, int offset, int length) {
+        Handle handle = Lookup(id);
+        if (handle == null)
+            return -1;
+        synchronized (handle) {
+            if (handle.closed)
+                return -1;
+            return handle.device.WriteFrom(handle.id, buffer, offset, length);
+        }
+    }
+
+    @Override
+    public int ReadAt(int id, int position, byte[] buffer, int offset, int length) {
+        Handle handle = Lookup(id);
+        if (handle == null)
+            return -1;
+        synchronized (handle) {
+            if (handle.closed)
+                return -1;
+            return handle.device.ReadAt(handle.id, position, buffer, offset, length);
+        }
+    }
+
+    @Override
+    public int WriteAt(int id, int position, byte[] data) {
+        Handle handle = Lookup(id);
+        if (handle == null)
+            return -1;
+        synchronized (handle) {
+            if (handle.closed)
+                return -1;
+            return handle.device.WriteAt(handle.id, position, data);
+        }
+    }
+
+    @Override
+    public int ReadV(int id, byte[][] buffers) {
+        Handle handle = Lookup(id);
+        if (handle == null)
+            return -1;
+        synchronized (handle) {
+            if (handle.closed)
+                return -1;
+            return handle.device.ReadV(handle.id, buffers);
+        }
+    }
+
+    @Override
+    public int WriteV(int id, byte[][] buffers) {
+        Handle handle = Lookup(id);
+        if (handle == null)
+            return -1;
+        synchronized (handle) {
+            if (handle.closed)
+                return -1;
+            return handle.device.WriteV(handle.id, buffers);
+        }
+    }
+
+    /**
+     * Whether {@code id} belongs to a device whose reads and writes may wait on
+     * another process, see {@code BlockingDevice}.
+     */
+    public boolean isBlockingDevice(int id) {
+        Handle handle = Lookup(id);
+        if (handle == null)
+            return false;
+        synchronized (handle) {
+            return !handle.closed && handle.device instanceof BlockingDevice;
+        }
+    }
+
+    /**
+     * Always {@code true} for devices that never block.
+     */
+    @Override
+    public boolean canRead(int id) {
+        Handle handle = Lookup(id);
+        if (handle == null)
+            return true;
+        synchronized (handle) {
+            if (!handle.closed && handle.device instanceof BlockingDevice blockingDevice)
+                return blockingDevice.canRead(handle.id);
+            return true;
+        }
+    }
+
+    /**
+     * Always {@code true} for devices that never block.
+     */
+    @Override
+    public boolean canWrite(int id) {
+        Handle handle = Lookup(id);
+        if (handle == null)
+            return true;
+        synchronized (handle) {
+            if (!handle.closed && handle.device instanceof BlockingDevice blockingDevice)
+                return blockingDevice.canWrite(handle.id);
+            return true;
+        }
     }
 }
@@ -0,0 +1,55 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Repeatedly allocates a few pages, touches each of them, and frees them
+ * again, and reports how many bytes the kernel's thread allocates on the
+ * Java heap per round, along with how much garbage collection the run
+ * caused.
+ */
+public class VirtualMemoryAllocationRateBenchmarkProcess extends UserlandProcess {
+
+    private static final int PAGES = 8;
+    private static final int ROUNDS = 100_000;
+
+    @Override
+    public void main() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long kernel = -1;
+        for (Thread thread : Thread.getAllStackTraces().keySet())
+            if (thread.getName().equals("Kernel"))
+                kernel = thread.threadId();
+        if (kernel == -1)
+            throw new RuntimeException("Kernel thread not found");
+
+        // warm up, so the table's nodes and the JIT are in place
+        round();
+        long gcBefore = collections();
+        long allocatedBefore = threads.getThreadAllocatedBytes(kernel);
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++)
+            round();
+        long time = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(kernel) - allocatedBefore;
+        long gcs = collections() - gcBefore;
+
+        println(String.format("%d rounds of allocating, touching and freeing %d pages in %.1f ms (%.2f us each); kernel allocated %.1f bytes per round, %d garbage collections",
+                ROUNDS, PAGES, time / 1e6, time / 1e3 / ROUNDS, (double) allocated / ROUNDS, gcs));
+    }
+
+    private void round() {
+        int p = OS.AllocateMemory(PAGES * Hardware.PAGE_SIZE, false);
+        if (p == -1)
+            throw new RuntimeException("Memory allocation failed");
+        for (int i = 0; i < PAGES; i++)
+            Hardware.Write(p + i * Hardware.PAGE_SIZE, (byte) i);
+        OS.FreeMemory(p, PAGES * Hardware.PAGE_SIZE);
+    }
+
+    private static long collections() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            count += gc.getCollectionCount();
+        return count;
+    }
+}
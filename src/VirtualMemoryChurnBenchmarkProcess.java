@@ -0,0 +1,63 @@
+import java.util.Random;
+
+/**
+ * Fills a large part of the virtual address space with 20,000 mappings of
+ * random sizes, then repeatedly unmaps a random one and maps another of a
+ * different size, leaving the address space fragmented. Reports how long
+ * mapping takes while the space is nearly empty, once it is full, and during
+ * the churn.
+ * <p>
+ * Mappings come from {@code MapFile}, which uses no memory until a page is
+ * touched, so the benchmark measures finding virtual room and nothing else.
+ */
+public class VirtualMemoryChurnBenchmarkProcess extends UserlandProcess {
+
+    private static final int MAPPINGS = 20_000;
+    private static final int MAX_PAGES = 64;
+    private static final int CHURN = 100_000;
+    /** Number of maps timed at the start and end of filling. */
+    private static final int SAMPLE = 1_000;
+
+    @Override
+    public void main() {
+        Random random = new Random(42);
+        int fd = OS.Open("file churn.bin");
+        if (fd == -1)
+            throw new RuntimeException("Open failed");
+        int[] addresses = new int[MAPPINGS];
+        int[] lengths = new int[MAPPINGS];
+
+        long firstTime = 0, lastTime = 0;
+        for (int i = 0; i < MAPPINGS; i++) {
+            lengths[i] = (1 + random.nextInt(MAX_PAGES)) * Hardware.PAGE_SIZE;
+            long start = System.nanoTime();
+            addresses[i] = OS.MapFile(fd, 0, lengths[i]);
+            long time = System.nanoTime() - start;
+            if (addresses[i] == -1)
+                throw new RuntimeException("MapFile failed after " + i + " mappings");
+            if (i < SAMPLE)
+                firstTime += time;
+            else if (i >= MAPPINGS - SAMPLE)
+                lastTime += time;
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < CHURN; i++) {
+            int victim = random.nextInt(MAPPINGS);
+            if (!OS.UnmapFile(addresses[victim], lengths[victim]))
+                throw new RuntimeException("UnmapFile failed");
+            lengths[victim] = (1 + random.nextInt(MAX_PAGES)) * Hardware.PAGE_SIZE;
+            addresses[victim] = OS.MapFile(fd, 0, lengths[victim]);
+            if (addresses[victim] == -1)
+                throw new RuntimeException("MapFile failed during churn");
+        }
+        long churnTime = System.nanoTime() - start;
+
+        for (int i = 0; i < MAPPINGS; i++)
+            OS.UnmapFile(addresses[i], lengths[i]);
+        OS.Close(fd);
+
+        println(String.format("mapping %d regions of 1-%d pages: %.2f us each when empty, %.2f us each when full; %d unmap+map pairs in %.1f ms (%.2f us each)",
+                MAPPINGS, MAX_PAGES, firstTime / 1e3 / SAMPLE, lastTime / 1e3 / SAMPLE, CHURN, churnTime / 1e6, churnTime / 1e3 / CHURN));
+    }
+}
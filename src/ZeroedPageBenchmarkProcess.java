@@ -0,0 +1,64 @@
+/**
+ * Checks that memory freed by one allocation reads as zeros when handed out
+ * again, for small and large pages, then times first writes to fresh small
+ * pages twice: once after idling long enough for the idle process to zero
+ * free pages ahead of time, and once straight after, with those used up.
+ * Reports how many pages came zeroed ahead of time and how many were zeroed
+ * on the spot.
+ */
+public class ZeroedPageBenchmarkProcess extends UserlandProcess {
+
+    private static final int CHECK_SIZE = 2 * Hardware.LARGE_PAGE_SIZE;
+    private static final int PAGES = 64;
+    private static final int IDLE_MILLIS = 1000;
+    /** Rounds run before the one reported, to warm up. */
+    private static final int WARM_UP = 3;
+
+    @Override
+    public void main() {
+        check(true);
+        check(false);
+        for (int round = 0; round <= WARM_UP; round++) {
+            OS.Sleep(IDLE_MILLIS);
+            touch("after idling", round == WARM_UP);
+            touch("straight after", round == WARM_UP);
+        }
+    }
+
+    private void check(boolean largePages) {
+        int p = OS.AllocateMemory(CHECK_SIZE, largePages);
+        if (p == -1)
+            throw new RuntimeException("Memory allocation failed");
+        for (int i = 0; i < CHECK_SIZE; i++)
+            Hardware.Write(p + i, (byte) 0xAA);
+        OS.FreeMemory(p, CHECK_SIZE);
+        p = OS.AllocateMemory(CHECK_SIZE, largePages);
+        for (int i = 0; i < CHECK_SIZE; i++)
+            if (Hardware.Read(p + i) != 0)
+                throw new RuntimeException("Fresh memory holds a previous allocation's data");
+        // written so the pages have frames of their own, then checked again
+        for (int i = 0; i < CHECK_SIZE; i += Hardware.PAGE_SIZE)
+            Hardware.Write(p + i, (byte) 0);
+        for (int i = 0; i < CHECK_SIZE; i++)
+            if (Hardware.Read(p + i) != 0)
+                throw new RuntimeException("Fresh memory holds a previous allocation's data");
+        OS.FreeMemory(p, CHECK_SIZE);
+    }
+
+    private void touch(String when, boolean report) {
+        int size = PAGES * Hardware.PAGE_SIZE;
+        int p = OS.AllocateMemory(size, false);
+        if (p == -1)
+            throw new RuntimeException("Memory allocation failed");
+        MemoryStats before = OS.GetMemoryStats();
+        long start = System.nanoTime();
+        for (int i = 0; i < size; i += Hardware.PAGE_SIZE)
+            Hardware.Write(p + i, (byte) 1);
+        long time = System.nanoTime() - start;
+        MemoryStats touched = OS.GetMemoryStats().since(before);
+        OS.FreeMemory(p, size);
+        if (report)
+            println(String.format("%s: %d first writes, %d pages zeroed ahead of time, %d zeroed on the spot, %d left ready; %.2f us per first write",
+                    when, PAGES, touched.zeroedPoolHits, touched.inlineZeroings, touched.zeroedPoolDepth, time / 1e3 / PAGES));
+    }
+}